@@ -0,0 +1,81 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+
+/**
+ * The outcome of running a heuristic on a protocol graph. Everything an {@link OutputFormatter} prints is calculated
+ * once when the result is created, so formatting never runs an analysis again.
+ */
+public class AnalysisResult {
+    private final ProtocolGraph graph;
+    private final PseudoPeriodicFunction approximation;
+    private final HullSimplification hullSimplification;
+    private final StepFunction maxTraffic;
+    private final long horizon;
+    private final long analysisTime;
+
+    /**
+     * @param graph          the analyzed graph, in its original time unit
+     * @param approximation  the pseudo-periodic approximation produced by the heuristic
+     * @param horizon        the time up to which the result should be output
+     * @param withMaxTraffic whether to also calculate the actual max traffic up to <code>horizon</code> for comparison
+     * @param analysisTime   how long the heuristic took, in milliseconds
+     */
+    public AnalysisResult(ProtocolGraph graph, PseudoPeriodicFunction approximation, long horizon, boolean withMaxTraffic, long analysisTime) {
+        this(graph, approximation, horizon, withMaxTraffic, analysisTime, 0);
+    }
+
+    /**
+     * @param maxHullSegments the maximum number of segments of the concave hull, see {@link HullSimplification}. 0
+     *                        for no limit
+     */
+    public AnalysisResult(ProtocolGraph graph, PseudoPeriodicFunction approximation, long horizon, boolean withMaxTraffic, long analysisTime, int maxHullSegments) {
+        this.graph = graph;
+        this.approximation = approximation;
+        this.hullSimplification = new HullSimplification(approximation.concaveHull(), maxHullSegments);
+        this.maxTraffic = withMaxTraffic ? graph.maxTrafficFunction(horizon) : null;
+        this.horizon = horizon;
+        this.analysisTime = analysisTime;
+    }
+
+    public ProtocolGraph getGraph() {
+        return graph;
+    }
+
+    public PseudoPeriodicFunction getApproximation() {
+        return approximation;
+    }
+
+    /**
+     * The concave hull of the approximation, simplified to the requested number of segments
+     */
+    public ArrivalCurve getConcaveHull() {
+        return hullSimplification.getCurve();
+    }
+
+    public HullSimplification getHullSimplification() {
+        return hullSimplification;
+    }
+
+    public boolean hasMaxTraffic() {
+        return maxTraffic != null;
+    }
+
+    /**
+     * The actual max traffic of the graph, valid up to {@link #getHorizon()}
+     */
+    public StepFunction getMaxTraffic() {
+        if (maxTraffic == null) {
+            throw new IllegalStateException("Max traffic was not calculated for this result");
+        }
+        return maxTraffic;
+    }
+
+    public long getHorizon() {
+        return horizon;
+    }
+
+    public long getAnalysisTime() {
+        return analysisTime;
+    }
+}
@@ -4,6 +4,8 @@ import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 
+import java.io.File;
+
 /**
  * @author Malte Schütze
  */
@@ -17,18 +19,51 @@ public class Args {
     @Parameter(names = {"-f", "--format"}, description = "How to format output", converter = OutputFormatterConverter.class)
     public OutputFormatter formatter = new DiscoDncFormatter();
 
+    @Parameter(names = {"-o", "--output"}, description = "Write the formatted output to this file instead of stdout. Required for the binary, csv and jsonl formats")
+    public File output;
+
     @Parameter(names = {"-v", "--verbose"}, description = "Include \"real\" arrival function and pseudoperiodic approximation in output")
     public boolean verbose;
 
+    @Parameter(names = {"-s", "--max-segments"}, description = "Maximum number of segments of the output arrival curve, loosening it as little as possible. 0 for no limit")
+    public int maxSegments;
+
+    @Parameter(names = {"-P", "--plot-points"}, description = "Maximum number of points per plotted step function in matplotlib output. 0 for all")
+    public int plotPoints;
+
     @Parameter(names = {"-H", "--heuristic"}, description = "The heuristic to use")
     public Heuristic heuristic = Heuristic.SUBADDITIVE;
 
     @Parameter(names = {"-k", "--threshold"}, description = "Threshold value for subadditive approximation. 0 for auto")
     public long threshold;
 
+    @Parameter(names = {"-d", "--detect-period"}, description = "Stop the subadditive heuristic early once the max traffic provably repeats")
+    public boolean detectPeriod;
+
     @Parameter(names = {"-n", "--numblocks"}, description = "Number of sequential blocks for building fully-connected model. 0 for auto")
     public int numBlocks;
 
+    @Parameter(names = {"-m", "--minimize"}, description = "Merge equivalent blocks before running the heuristic")
+    public boolean minimize;
+
+    @Parameter(names = {"-p", "--prune"}, description = "Remove dominated blocks from the fully-connected model")
+    public boolean prune;
+
+    @Parameter(names = {"-q", "--quantize"}, description = "Round offsets and periods down to multiples of this grid for a faster, more pessimistic analysis. 0 to disable")
+    public long quantization;
+
+    @Parameter(names = {"-S", "--swap-dir"}, description = "Keep step functions in a memory-mapped file in this directory instead of on the heap")
+    public File swapDirectory;
+
+    @Parameter(names = {"-i", "--dense-index"}, description = "Look up times in step functions through a dense table of time buckets instead of a binary search")
+    public boolean denseIndex;
+
+    @Parameter(names = {"-c", "--components"}, description = "Run the heuristic on every strongly connected component separately and combine the results")
+    public boolean components;
+
+    @Parameter(names = {"-t", "--threads"}, description = "Number of threads for tracing the max traffic in the subadditive heuristic")
+    public int threads = 1;
+
     @Parameter(names = {"-b", "--benchmark"}, description = "Run program in benchmark mode")
     public boolean benchmark;
 
@@ -38,7 +73,8 @@ public class Args {
     public enum Heuristic {
         SUBADDITIVE,
         RESCALE,
-        LOOP
+        LOOP,
+        CYCLE
     }
 
     private static class OutputFormatterConverter implements IStringConverter<OutputFormatter> {
@@ -48,7 +84,10 @@ public class Args {
             switch (s.toLowerCase()) {
                 case "discodnc": return new DiscoDncFormatter();
                 case "matplotlib": return new MatplotlibOutputFormatter();
-                default: throw new ParameterException("Unknown parameter '" + s + "' for 'format': Options are 'discodnc' or 'matplotlib'");
+                case "binary": return new BinaryOutputFormatter();
+                case "csv": return new CsvOutputFormatter();
+                case "jsonl": return new JsonLinesOutputFormatter();
+                default: throw new ParameterException("Unknown parameter '" + s + "' for 'format': Options are 'discodnc', 'matplotlib', 'binary', 'csv' or 'jsonl'");
             }
         }
     }
@@ -0,0 +1,119 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+
+/**
+ * Writes results as little-endian binary records. Each record starts with a header of three 32 bit integers: the
+ * magic number {@link #MAGIC}, the record type and the number of entries <code>n</code>. The entries follow as
+ * columns of primitive arrays:
+ * <ul>
+ * <li>{@link #ARRIVAL_CURVE}: <code>double[n]</code> x, <code>double[n]</code> y, <code>double[n]</code> gradient,
+ * <code>byte[n]</code> left-open flag</li>
+ * <li>{@link #PSEUDO_PERIODIC_FUNCTION}: <code>long</code> period begin, <code>long</code> period length,
+ * <code>double</code> period increment, <code>long[n]</code> step times, <code>double[n]</code> step values</li>
+ * <li>{@link #MAX_TRAFFIC}: <code>long[n]</code> step times, <code>double[n]</code> step values</li>
+ * </ul>
+ * See {@link CurveExport#readBinary(java.io.InputStream)} for reading it back.
+ */
+public class BinaryOutputFormatter implements OutputFormatter {
+    public static final int MAGIC = 0x47534943; // "GSIC"
+    public static final int ARRIVAL_CURVE = 1;
+    public static final int PSEUDO_PERIODIC_FUNCTION = 2;
+    public static final int MAX_TRAFFIC = 3;
+
+    @Override
+    public void printPseudoperiodicFunction(AnalysisResult result, OutputStream out) throws IOException {
+        PseudoPeriodicFunction f = result.getApproximation();
+        int count = f.incrementTimeSteps.size();
+        Output output = new Output(out);
+        output.putHeader(PSEUDO_PERIODIC_FUNCTION, count);
+        output.putLong(f.periodBegin);
+        output.putLong(f.periodLength);
+        output.putDouble(f.periodIncrement);
+        for (int i = 0; i < count; i++) output.putLong(f.incrementTimeSteps.get(i));
+        for (int i = 0; i < count; i++) output.putDouble(f.incrementValues.get(i));
+        output.flush();
+    }
+
+    @Override
+    public void printArrivalCurve(AnalysisResult result, OutputStream out) throws IOException {
+        ArrivalCurve curve = result.getConcaveHull();
+        int count = curve.getSegmentCount();
+        Output output = new Output(out);
+        output.putHeader(ARRIVAL_CURVE, count);
+        for (int i = 0; i < count; i++) output.putDouble(curve.getSegment(i).getX().doubleValue());
+        for (int i = 0; i < count; i++) output.putDouble(curve.getSegment(i).getY().doubleValue());
+        for (int i = 0; i < count; i++) output.putDouble(curve.getSegment(i).getGrad().doubleValue());
+        for (int i = 0; i < count; i++) output.putByte(curve.getSegment(i).isLeftopen() ? 1 : 0);
+        output.flush();
+    }
+
+    @Override
+    public void printMaxTraffic(AnalysisResult result, OutputStream out) throws IOException {
+        StepFunction f = result.getMaxTraffic();
+        int count = f.getNumSteps();
+        Output output = new Output(out);
+        output.putHeader(MAX_TRAFFIC, count);
+        for (int i = 0; i < count; i++) output.putLong(f.getTimeAt(i));
+        for (int i = 0; i < count; i++) output.putDouble(f.getValueAt(i));
+        output.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "binary";
+    }
+
+    /**
+     * Encodes values into a small buffer which is written out whenever it runs full
+     */
+    private static class Output {
+        private final OutputStream out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        void putHeader(int type, int count) throws IOException {
+            ensureRemaining(3 * Integer.BYTES);
+            buffer.putInt(MAGIC).putInt(type).putInt(count);
+        }
+
+        void putLong(long value) throws IOException {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensureRemaining(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putByte(int value) throws IOException {
+            ensureRemaining(1);
+            buffer.put((byte) value);
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public boolean isMachineReadable() {
+        return true;
+    }
+}
@@ -1,75 +1,162 @@
 package org.networkcalculus.dnc.gsi_input;
 
 import java.util.*;
-import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
+ * A block of a protocol graph. Its messages are only read through {@link #getMessageOffset(int)},
+ * {@link #getMessageSize(int)} and {@link #getMessageLabel(int)}, so blocks can store them ({@link MessageBlock}) or
+ * derive them from other blocks ({@link ConcatenatedBlock}, {@link RescaledBlock}).
+ *
  * @author Malte Schütze
  */
-public class Block implements Iterable<Message> {
-    private String label;
+public abstract class Block implements Iterable<Message> {
+    private Label label;
     private long period;
     private int totalTraffic;
-    private List<Message> messages = new ArrayList<>();
     private Set<Block> previousBlocks = new HashSet<>();
     private Set<Block> nextBlocks = new HashSet<>();
+    // Labels of blocks with identical timing that were merged into this block
+    private List<Label> aliases = new ArrayList<>();
 
     // For the step function of the flow in this block, note the times where the function "steps", and to what traffc it steps
     private StepFunction maxPrefix = new StepFunction();
     private StepFunction maxSuffix = new StepFunction();
-
-    public Block(String label, long period) {
+    // Max traffic in any interval of a given length that lies completely inside this block, calculated on demand
+    private StepFunction maxWindow;
+    // Locks shared by all blocks of a strongly connected component while functions are extended concurrently, see
+    // ProtocolGraph#precalculate(long, int). Null when single-threaded.
+    private Object prefixLock;
+    private Object suffixLock;
+    // Per-thread state of getShortestIntervalWhereMaxTrafficExceeds, which is called with increasing values
+    private final ThreadLocal<MessageSearch> messageSearch = new ThreadLocal<>();
+    // Set once a graph has built its envelopes from this block
+    private volatile boolean frozen;
+
+    public Block(Label label, long period) {
         this.label = label;
         this.period = period;
     }
 
     public String getLabel() {
+        return label.toString();
+    }
+
+    public Label getCompactLabel() {
         return label;
     }
 
-    public void addMessage(Message message) {
-        if (message.getOffset() < 0 || message.getOffset() >= period) {
-            throw new IllegalArgumentException("Message offset invalid (below zero or exceeding period): " + label + "/" + message.getLabel());
-        }
-        this.messages.add(message);
-        this.totalTraffic += message.getSize();
+    public void addAlias(Label alias) {
+        this.aliases.add(alias);
+    }
+
+    public List<String> getAliases() {
+        return aliases.stream().map(Label::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Account for a message that a subclass appended to its messages
+     */
+    void appendInBlockTraffic(long offset, int size) {
+        this.totalTraffic += size;
+        this.maxWindow = null;
 
         // Message at offset n is only counted in interval of length n+1
-        maxPrefix.setValueAt(message.getOffset() + 1, maxPrefix.getValue(maxPrefix.getValidUpTo()) + message.getSize());
+        maxPrefix.setValueAt(offset + 1, maxPrefix.getValue(maxPrefix.getValidUpTo()) + size);
         rebuildMaxSuffix();
     }
 
     private void rebuildMaxSuffix() {
         StepFunction f = new StepFunction();
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            Message msg = messages.get(i);
-            f.setValueAt(period - msg.getOffset(), f.getValue(f.getValidUpTo()) + msg.getSize());
+        for (int i = getNumMessages() - 1; i >= 0; i--) {
+            f.setValueAt(period - getMessageOffset(i), f.getValue(f.getValidUpTo()) + getMessageSize(i));
         }
 
         maxSuffix = f;
     }
 
+    /**
+     * Set up the traffic inside this block from all its messages at once, for subclasses whose messages are fixed when
+     * they are created
+     */
+    void rebuildInBlockTraffic() {
+        totalTraffic = 0;
+        maxPrefix = new StepFunction();
+        maxWindow = null;
+        for (int i = 0; i < getNumMessages(); i++) {
+            long offset = getMessageOffset(i);
+            if (offset < 0 || offset >= period) {
+                throw new IllegalArgumentException("Message offset invalid (below zero or exceeding period): " + label + "/" + getMessageLabel(i));
+            }
+            totalTraffic += getMessageSize(i);
+            maxPrefix.setValueAt(offset + 1, totalTraffic);
+        }
+
+        rebuildMaxSuffix();
+    }
+
+    /**
+     * Set up the traffic inside this block from step functions that were derived elsewhere, e.g. from the functions of
+     * the blocks a subclass is composed of. Only the parts up to the end of the block must be given.
+     */
+    void setInBlockTraffic(int totalTraffic, StepFunction maxPrefix, StepFunction maxSuffix) {
+        this.totalTraffic = totalTraffic;
+        this.maxPrefix = maxPrefix;
+        this.maxSuffix = maxSuffix;
+        this.maxWindow = null;
+    }
+
     public long getPeriod() {
         return period;
     }
 
-    public int getNumMessages() {
-        return messages.size();
-    }
+    public abstract int getNumMessages();
 
+    /**
+     * Messages are not stored as objects, the returned message is a view created on each call
+     */
     public Message getMessage(int idx) {
-        return messages.get(idx);
+        Objects.checkIndex(idx, getNumMessages());
+        return new Message(getMessageLabel(idx), this, getMessageOffset(idx), getMessageSize(idx));
     }
 
+    abstract String getMessageLabel(int idx);
+
+    abstract long getMessageOffset(int idx);
+
+    abstract int getMessageSize(int idx);
+
     private void addPrevious(Block block) {
         this.previousBlocks.add(block);
     }
 
     public void addNext(Block block) {
+        checkNotFrozen();
+        block.checkNotFrozen();
         this.nextBlocks.add(block);
         block.addPrevious(this);
     }
 
+    /**
+     * Forbid adding messages or next blocks from now on. A graph freezes its blocks once it has built its envelopes
+     * from them, as they would not notice the added traffic. Removing next blocks is still allowed, as it only makes
+     * the envelopes less tight.
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Block " + label + " can not be changed after its graph was analysed");
+        }
+    }
+
+    public void removeNext(Block block) {
+        this.nextBlocks.remove(block);
+        block.previousBlocks.remove(this);
+    }
+
     public Set<Block> getNextBlocks() {
         return Collections.unmodifiableSet(nextBlocks);
     }
@@ -126,26 +213,65 @@ public class Block implements Iterable<Message> {
     }
 
     public long getEarliestTimeMaxPrefixExceeds(double value) {
+        return getEarliestTimeMaxPrefixExceeds(value, maxPrefix.cursor());
+    }
+
+    /**
+     * Same as {@link #getEarliestTimeMaxPrefixExceeds(double)}, searching the max prefix function with
+     * <code>cursor</code>
+     */
+    private long getEarliestTimeMaxPrefixExceeds(double value, StepFunction.Cursor cursor) {
+        Object lock = prefixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                return earliestTimeMaxPrefixExceeds(value, cursor);
+            }
+        }
+        return earliestTimeMaxPrefixExceeds(value, cursor);
+    }
+
+    private long earliestTimeMaxPrefixExceeds(double value, StepFunction.Cursor cursor) {
         while (value >= maxPrefix.maximumValue()) {
             precalculateMaxPrefix(getNextMaxPrefixIncrementTime());
         }
-        return maxPrefix.firstTimeExceeding(value);
+        return cursor.firstTimeExceeding(value);
     }
 
     public long getEarliestTimeMaxSuffixExceeds(double value) {
+        Object lock = suffixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                return earliestTimeMaxSuffixExceeds(value);
+            }
+        }
+        return earliestTimeMaxSuffixExceeds(value);
+    }
+
+    private long earliestTimeMaxSuffixExceeds(double value) {
         while (value >= maxSuffix.maximumValue()) {
             precalculateMaxSuffix(getNextMaxSuffixIncrementTime());
         }
         return maxSuffix.firstTimeExceeding(value);
     }
 
+    /**
+     * The shortest interval that starts just before a message of this block and contains more than
+     * <code>value</code> traffic. Each message keeps a cursor over the max prefix function, so a sweep with increasing
+     * values costs amortized O(1) per message and step.
+     */
     public long getShortestIntervalWhereMaxTrafficExceeds(double value) {
+        MessageSearch search = messageSearch.get();
+        if (search == null || search.cursors.length != getNumMessages() || search.cursors.length > 0 && search.cursors[0].getFunction() != maxPrefix) {
+            search = new MessageSearch(this);
+            messageSearch.set(search);
+        }
+
         long shortestInterval = Long.MAX_VALUE;
-        for (Message message : messages) {
-            double trafficBefore = maxPrefix(message.getOffset()); // Offset is 0-indexed -> offset i = i slots before
-            double trafficToReach = value + trafficBefore;
-            long intervalToReach = getEarliestTimeMaxPrefixExceeds(trafficToReach);
-            long actualInterval = intervalToReach - message.getOffset();
+        for (int i = 0; i < getNumMessages(); i++) {
+            long offset = getMessageOffset(i);
+            double trafficToReach = value + search.trafficBefore[i];
+            long intervalToReach = getEarliestTimeMaxPrefixExceeds(trafficToReach, search.cursors[i]);
+            long actualInterval = intervalToReach - offset;
             if (actualInterval < shortestInterval) {
                 shortestInterval = actualInterval;
             }
@@ -155,6 +281,17 @@ public class Block implements Iterable<Message> {
     }
 
     public void precalculateMaxPrefix(long time) {
+        Object lock = prefixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                extendMaxPrefix(time);
+            }
+        } else {
+            extendMaxPrefix(time);
+        }
+    }
+
+    private void extendMaxPrefix(long time) {
         while (maxPrefix.getValidUpTo() < time) {
             long nextIncrement = getNextMaxPrefixIncrementTime();
             if (nextIncrement <= period)
@@ -175,6 +312,17 @@ public class Block implements Iterable<Message> {
     }
 
     public void precalculateMaxSuffix(long time) {
+        Object lock = suffixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                extendMaxSuffix(time);
+            }
+        } else {
+            extendMaxSuffix(time);
+        }
+    }
+
+    private void extendMaxSuffix(long time) {
         while (maxSuffix.getValidUpTo() < time) {
             long nextIncrement = getNextMaxSuffixIncrementTime();
             if (nextIncrement <= period)
@@ -200,6 +348,16 @@ public class Block implements Iterable<Message> {
      * @return an upper bound on the traffic generated in a suffix of this block
      */
     public double maxSuffix(long time) {
+        Object lock = suffixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                return lookupMaxSuffix(time);
+            }
+        }
+        return lookupMaxSuffix(time);
+    }
+
+    private double lookupMaxSuffix(long time) {
         if (time == 0) {
             return 0;
         }
@@ -219,6 +377,16 @@ public class Block implements Iterable<Message> {
      * @return an upper bound on the traffic generated in a prefix of this block
      */
     public double maxPrefix(long time) {
+        Object lock = prefixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                return lookupMaxPrefix(time);
+            }
+        }
+        return lookupMaxPrefix(time);
+    }
+
+    private double lookupMaxPrefix(long time) {
         if (time == 0) {
             return 0;
         }
@@ -246,7 +414,7 @@ public class Block implements Iterable<Message> {
     public double maxTraffic(int fromMessage, long time) {
         // Calculate traffic in [a, b)
         // as traffic [0, b) - traffic [0, a)
-        long offset = messages.get(fromMessage).getOffset();
+        long offset = getMessageOffset(fromMessage);
         long extInterval = offset + time;
 
         double trafficInExtInterval = maxPrefix(extInterval);
@@ -267,22 +435,187 @@ public class Block implements Iterable<Message> {
         return maxPrefix.maximumInterval(time, period);
     }
 
+    /**
+     * Checks whether this block is no longer than <code>other</code> and generates at least as much traffic in every
+     * prefix, every suffix and every interval lying inside the block. Any occurrence of <code>other</code> on a path
+     * can then be replaced by this block without decreasing the traffic in any interval.
+     *
+     * @param other the block to compare against
+     * @return true if this block dominates <code>other</code>
+     */
+    public boolean dominates(Block other) {
+        if (period > other.period || totalTraffic < other.totalTraffic) {
+            return false;
+        }
+
+        // Prefixes: traffic in [0, t) is the sum of all messages with offset < t
+        int idx = 0;
+        int traffic = 0;
+        int otherTraffic = 0;
+        for (int i = 0; i < other.getNumMessages(); i++) {
+            otherTraffic += other.getMessageSize(i);
+            long time = Math.min(other.getMessageOffset(i) + 1, period);
+            while (idx < getNumMessages() && getMessageOffset(idx) < time) {
+                traffic += getMessageSize(idx++);
+            }
+            if (traffic < otherTraffic) {
+                return false;
+            }
+        }
+
+        // Suffixes: traffic in the last t slots is the sum of all messages with offset >= period - t
+        idx = getNumMessages() - 1;
+        traffic = 0;
+        otherTraffic = 0;
+        for (int i = other.getNumMessages() - 1; i >= 0; i--) {
+            otherTraffic += other.getMessageSize(i);
+            long time = Math.min(other.period - other.getMessageOffset(i), period);
+            while (idx >= 0 && getMessageOffset(idx) >= period - time) {
+                traffic += getMessageSize(idx--);
+            }
+            if (traffic < otherTraffic) {
+                return false;
+            }
+        }
+
+        // Intervals inside the block, every interval at least as long as this block contains all of its traffic
+        StepFunction window = getMaxWindowFunction();
+        StepFunction otherWindow = other.getMaxWindowFunction();
+        List<Long> times = otherWindow.getIncrementTimeSteps();
+        List<Double> values = otherWindow.getIncrementValues();
+        for (int i = 0; i < times.size() && times.get(i) < period; i++) {
+            if (window.getValue(times.get(i)) < values.get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    StepFunction getMaxWindowFunction() {
+        if (maxWindow != null) {
+            return maxWindow;
+        }
+
+        // Every interval starting at message i and ending with message j is a candidate of length offset_j - offset_i + 1.
+        // The candidates of each start are sorted by length, so they are merged instead of collected.
+        int numMessages = getNumMessages();
+        long[] offsets = new long[numMessages];
+        double[] trafficBefore = new double[numMessages + 1];
+        for (int i = 0; i < numMessages; i++) {
+            offsets[i] = getMessageOffset(i);
+            trafficBefore[i + 1] = trafficBefore[i] + getMessageSize(i);
+        }
+
+        StepFunction f = new StepFunction();
+        new SortedRuns(numMessages) {
+            @Override
+            int size(int run) {
+                return numMessages - run;
+            }
+
+            @Override
+            long getTime(int run, int idx) {
+                return offsets[run + idx] - offsets[run] + 1;
+            }
+
+            @Override
+            double getValue(int run, int idx) {
+                return trafficBefore[run + idx + 1] - trafficBefore[run];
+            }
+        }.appendMaximum(f, 0);
+        f.setValueAt(period, totalTraffic);
+
+        maxWindow = f;
+        return f;
+    }
+
+    StepFunction getMaxPrefixFunction() {
+        return maxPrefix;
+    }
+
+    StepFunction getMaxSuffixFunction() {
+        return maxSuffix;
+    }
+
+    /**
+     * Replace the max prefix function after <code>begin + length</code> by its periodic continuation, see
+     * {@link StepFunction#setPeriodic(long, long, double)}. The caller must have proven that it repeats.
+     */
+    void setMaxPrefixPeriodic(long begin, long length, double increment) {
+        Object lock = prefixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                maxPrefix.setPeriodic(begin, length, increment);
+            }
+        } else {
+            maxPrefix.setPeriodic(begin, length, increment);
+        }
+    }
+
+    /**
+     * Same as {@link #setMaxPrefixPeriodic(long, long, double)} for the max suffix function
+     */
+    void setMaxSuffixPeriodic(long begin, long length, double increment) {
+        Object lock = suffixLock;
+        if (lock != null) {
+            synchronized (lock) {
+                maxSuffix.setPeriodic(begin, length, increment);
+            }
+        } else {
+            maxSuffix.setPeriodic(begin, length, increment);
+        }
+    }
+
+    /**
+     * Guard the prefix and suffix functions of this block with the given locks, or stop guarding them if null. All
+     * blocks of a strongly connected component must share the same locks, as their functions are extended together.
+     */
+    void setLocks(Object prefixLock, Object suffixLock) {
+        this.prefixLock = prefixLock;
+        this.suffixLock = suffixLock;
+    }
+
     public int totalTrafficInBlock() {
         return totalTraffic;
     }
 
     @Override
     public Iterator<Message> iterator() {
-        return messages.iterator();
-    }
+        return new Iterator<Message>() {
+            private int idx = 0;
 
-    @Override
-    public void forEach(Consumer<? super Message> action) {
-        messages.forEach(action);
+            @Override
+            public boolean hasNext() {
+                return idx < getNumMessages();
+            }
+
+            @Override
+            public Message next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getMessage(idx++);
+            }
+        };
     }
 
-    @Override
-    public Spliterator<Message> spliterator() {
-        return messages.spliterator();
+    /**
+     * A cursor over the max prefix function for each message, and the traffic before each message
+     */
+    private static class MessageSearch {
+        final StepFunction.Cursor[] cursors;
+        final double[] trafficBefore;
+
+        MessageSearch(Block block) {
+            int messages = block.getNumMessages();
+            cursors = new StepFunction.Cursor[messages];
+            trafficBefore = new double[messages];
+            for (int i = 0; i < messages; i++) {
+                cursors[i] = block.maxPrefix.cursor();
+                // Offset is 0-indexed -> offset i = i slots before
+                trafficBefore[i] = block.maxPrefix(block.getMessageOffset(i));
+            }
+        }
     }
 }
@@ -0,0 +1,109 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A block made up of several blocks that are executed one after another. Messages are not copied, but looked up in
+ * the underlying blocks when requested, and the traffic inside this block is derived from theirs.
+ */
+public class ConcatenatedBlock extends Block {
+    private final List<Block> blocks;
+    // Start time and index of the first message of each underlying block within this block
+    private final long[] blockOffsets;
+    private final int[] firstMessages;
+
+    public ConcatenatedBlock(List<Block> blocks) {
+        super(label(blocks), blocks.stream().mapToLong(Block::getPeriod).sum());
+        this.blocks = new ArrayList<>(blocks);
+        this.blockOffsets = new long[blocks.size()];
+        this.firstMessages = new int[blocks.size() + 1];
+
+        StepFunction maxPrefix = new StepFunction();
+        long globalOffset = 0;
+        int traffic = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            blockOffsets[i] = globalOffset;
+            firstMessages[i + 1] = firstMessages[i] + block.getNumMessages();
+            addInBlockSteps(maxPrefix, block, block.getMaxPrefixFunction(), globalOffset, traffic);
+
+            globalOffset += block.getPeriod();
+            traffic += block.totalTrafficInBlock();
+        }
+
+        StepFunction maxSuffix = new StepFunction();
+        globalOffset = 0;
+        traffic = 0;
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            Block block = blocks.get(i);
+            addInBlockSteps(maxSuffix, block, block.getMaxSuffixFunction(), globalOffset, traffic);
+
+            globalOffset += block.getPeriod();
+            traffic += block.totalTrafficInBlock();
+        }
+
+        setInBlockTraffic(traffic, maxPrefix, maxSuffix);
+    }
+
+    static Label label(List<Block> blocks) {
+        return Label.concat(blocks.stream().map(Block::getCompactLabel).collect(Collectors.toList()));
+    }
+
+    /**
+     * Append the steps of <code>f</code> that lie inside <code>block</code> to <code>target</code>, shifted in time
+     * and traffic
+     */
+    private static void addInBlockSteps(StepFunction target, Block block, StepFunction f, long timeShift, int trafficShift) {
+        List<Long> times = f.getIncrementTimeSteps();
+        List<Double> values = f.getIncrementValues();
+        for (int i = 0; i < times.size() && times.get(i) <= block.getPeriod(); i++) {
+            target.setValueAt(timeShift + times.get(i), trafficShift + values.get(i));
+        }
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    @Override
+    public int getNumMessages() {
+        return firstMessages[blocks.size()];
+    }
+
+    @Override
+    String getMessageLabel(int idx) {
+        int block = blockOf(idx);
+        return blocks.get(block).getMessageLabel(idx - firstMessages[block]);
+    }
+
+    @Override
+    long getMessageOffset(int idx) {
+        int block = blockOf(idx);
+        return blockOffsets[block] + blocks.get(block).getMessageOffset(idx - firstMessages[block]);
+    }
+
+    @Override
+    int getMessageSize(int idx) {
+        int block = blockOf(idx);
+        return blocks.get(block).getMessageSize(idx - firstMessages[block]);
+    }
+
+    private int blockOf(int idx) {
+        if (idx < 0 || idx >= getNumMessages()) {
+            throw new IndexOutOfBoundsException("No message " + idx + " in " + getLabel());
+        }
+
+        // Blocks without messages share their first index with the following block, pick the last of them
+        int block = Arrays.binarySearch(firstMessages, idx);
+        if (block < 0) {
+            return -(block + 1) - 1;
+        }
+        while (firstMessages[block + 1] == idx) {
+            block++;
+        }
+        return block;
+    }
+}
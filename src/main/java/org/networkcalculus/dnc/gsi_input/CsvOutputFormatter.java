@@ -0,0 +1,56 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+import org.networkcalculus.dnc.curves.LinearSegment;
+
+/**
+ * Writes results as CSV rows whose first column names the kind of row:
+ * <ul>
+ * <li><code>segment,x,y,gradient,leftopen</code> for each segment of the arrival curve</li>
+ * <li><code>period,begin,length,increment</code> followed by <code>step,time,value</code> rows for the pseudo-periodic
+ * function</li>
+ * <li><code>traffic,time,value</code> for each step of the max traffic</li>
+ * </ul>
+ * See {@link CurveExport#readCsv(java.io.Reader)} for reading it back.
+ */
+public class CsvOutputFormatter extends TextOutputFormatter {
+    @Override
+    public void printPseudoperiodicFunction(AnalysisResult result, Writer out) throws IOException {
+        PseudoPeriodicFunction f = result.getApproximation();
+        out.write("period," + f.periodBegin + "," + f.periodLength + "," + f.periodIncrement + "\n");
+        for (int i = 0; i < f.incrementTimeSteps.size(); i++) {
+            out.write("step," + f.incrementTimeSteps.get(i) + "," + f.incrementValues.get(i) + "\n");
+        }
+    }
+
+    @Override
+    public void printArrivalCurve(AnalysisResult result, Writer out) throws IOException {
+        ArrivalCurve curve = result.getConcaveHull();
+        for (int i = 0; i < curve.getSegmentCount(); i++) {
+            LinearSegment segment = curve.getSegment(i);
+            out.write("segment," + segment.getX().doubleValue() + "," + segment.getY().doubleValue() + ","
+                    + segment.getGrad().doubleValue() + "," + segment.isLeftopen() + "\n");
+        }
+    }
+
+    @Override
+    public void printMaxTraffic(AnalysisResult result, Writer out) throws IOException {
+        StepFunction f = result.getMaxTraffic();
+        for (int i = 0; i < f.getNumSteps(); i++) {
+            out.write("traffic," + f.getTimeAt(i) + "," + f.getValueAt(i) + "\n");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "csv";
+    }
+
+    @Override
+    public boolean isMachineReadable() {
+        return true;
+    }
+}
@@ -0,0 +1,228 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.networkcalculus.dnc.Calculator;
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+import org.networkcalculus.dnc.curves.Curve;
+import org.networkcalculus.dnc.curves.LinearSegment;
+import org.networkcalculus.dnc.numbers.Num;
+
+/**
+ * A result read back from the output of {@link BinaryOutputFormatter}, {@link CsvOutputFormatter} or
+ * {@link JsonLinesOutputFormatter}. The pseudo-periodic function and the max traffic are only present if they were
+ * written (i.e. in verbose mode).
+ */
+public class CurveExport {
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\":(\"[^\"]*\"|[^,}]+)");
+
+    private int numSegments;
+    private double[] x = new double[4];
+    private double[] y = new double[4];
+    private double[] gradients = new double[4];
+    private boolean[] leftOpen = new boolean[4];
+    private PseudoPeriodicFunction approximation;
+    private StepFunction maxTraffic;
+
+    private void addSegment(double x, double y, double gradient, boolean leftOpen) {
+        if (numSegments == this.x.length) {
+            this.x = Arrays.copyOf(this.x, 2 * numSegments);
+            this.y = Arrays.copyOf(this.y, 2 * numSegments);
+            this.gradients = Arrays.copyOf(this.gradients, 2 * numSegments);
+            this.leftOpen = Arrays.copyOf(this.leftOpen, 2 * numSegments);
+        }
+        this.x[numSegments] = x;
+        this.y[numSegments] = y;
+        this.gradients[numSegments] = gradient;
+        this.leftOpen[numSegments] = leftOpen;
+        numSegments++;
+    }
+
+    private void addStep(long time, double value) {
+        if (approximation == null) {
+            throw new IllegalStateException("Step of pseudo-periodic function before its period");
+        }
+        approximation.setValueAt(time, value);
+    }
+
+    private void addTraffic(long time, double value) {
+        if (maxTraffic == null) {
+            maxTraffic = new StepFunction();
+        }
+        maxTraffic.setValueAt(time, value);
+    }
+
+    public int getNumSegments() {
+        return numSegments;
+    }
+
+    public double getSegmentX(int idx) {
+        return x[idx];
+    }
+
+    public double getSegmentY(int idx) {
+        return y[idx];
+    }
+
+    public double getSegmentGradient(int idx) {
+        return gradients[idx];
+    }
+
+    public boolean isSegmentLeftOpen(int idx) {
+        return leftOpen[idx];
+    }
+
+    /**
+     * Rebuild the arrival curve with all exported segments, including the first one
+     */
+    public ArrivalCurve toArrivalCurve() {
+        Num num_factory = Num.getFactory(Calculator.getInstance().getNumBackend());
+        Curve curve_factory = Calculator.getInstance().getCurveFactory();
+
+        ArrivalCurve curve = curve_factory.createArrivalCurve(numSegments);
+        for (int i = 0; i < numSegments; i++) {
+            curve.setSegment(i, LinearSegment.createLinearSegment(num_factory.create(x[i]), num_factory.create(y[i]),
+                    num_factory.create(gradients[i]), leftOpen[i]));
+        }
+        return curve;
+    }
+
+    /**
+     * @return the pseudo-periodic function, or null if it was not exported
+     */
+    public PseudoPeriodicFunction getApproximation() {
+        return approximation;
+    }
+
+    /**
+     * @return the max traffic, or null if it was not exported
+     */
+    public StepFunction getMaxTraffic() {
+        return maxTraffic;
+    }
+
+    public static CurveExport readBinary(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(source);
+        CurveExport export = new CurveExport();
+        while (true) {
+            int first = in.read();
+            if (first < 0) {
+                return export;
+            }
+            int magic = Integer.reverseBytes((first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte());
+            if (magic != BinaryOutputFormatter.MAGIC) {
+                throw new IOException("Invalid record header " + Integer.toHexString(magic));
+            }
+            int type = Integer.reverseBytes(in.readInt());
+            int count = Integer.reverseBytes(in.readInt());
+
+            switch (type) {
+                case BinaryOutputFormatter.ARRIVAL_CURVE: {
+                    double[][] columns = new double[3][count];
+                    for (double[] column : columns) {
+                        for (int i = 0; i < count; i++) column[i] = readDouble(in);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        export.addSegment(columns[0][i], columns[1][i], columns[2][i], in.readByte() != 0);
+                    }
+                    break;
+                }
+                case BinaryOutputFormatter.PSEUDO_PERIODIC_FUNCTION: {
+                    long periodBegin = Long.reverseBytes(in.readLong());
+                    long periodLength = Long.reverseBytes(in.readLong());
+                    export.approximation = new PseudoPeriodicFunction(periodBegin, periodLength, readDouble(in));
+                    long[] times = readLongs(in, count);
+                    for (int i = 0; i < count; i++) export.addStep(times[i], readDouble(in));
+                    break;
+                }
+                case BinaryOutputFormatter.MAX_TRAFFIC: {
+                    long[] times = readLongs(in, count);
+                    for (int i = 0; i < count; i++) export.addTraffic(times[i], readDouble(in));
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in, int count) throws IOException {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) values[i] = Long.reverseBytes(in.readLong());
+        return values;
+    }
+
+    private static double readDouble(DataInputStream in) throws IOException {
+        return Double.longBitsToDouble(Long.reverseBytes(in.readLong()));
+    }
+
+    public static CurveExport readCsv(Reader source) throws IOException {
+        BufferedReader in = new BufferedReader(source);
+        CurveExport export = new CurveExport();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            String[] fields = line.split(",");
+            switch (fields[0]) {
+                case "segment":
+                    export.addSegment(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3]), Boolean.parseBoolean(fields[4]));
+                    break;
+                case "period":
+                    export.approximation = new PseudoPeriodicFunction(Long.parseLong(fields[1]), Long.parseLong(fields[2]), Double.parseDouble(fields[3]));
+                    break;
+                case "step":
+                    export.addStep(Long.parseLong(fields[1]), Double.parseDouble(fields[2]));
+                    break;
+                case "traffic":
+                    export.addTraffic(Long.parseLong(fields[1]), Double.parseDouble(fields[2]));
+                    break;
+                default:
+                    throw new IOException("Unknown row type '" + fields[0] + "'");
+            }
+        }
+        return export;
+    }
+
+    public static CurveExport readJsonLines(Reader source) throws IOException {
+        BufferedReader in = new BufferedReader(source);
+        CurveExport export = new CurveExport();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            Map<String, String> fields = new HashMap<>();
+            Matcher matcher = JSON_FIELD.matcher(line);
+            while (matcher.find()) {
+                String value = matcher.group(2);
+                fields.put(matcher.group(1), value.startsWith("\"") ? value.substring(1, value.length() - 1) : value);
+            }
+
+            String type = fields.getOrDefault("type", "");
+            switch (type) {
+                case "segment":
+                    export.addSegment(Double.parseDouble(fields.get("x")), Double.parseDouble(fields.get("y")), Double.parseDouble(fields.get("gradient")), Boolean.parseBoolean(fields.get("leftopen")));
+                    break;
+                case "period":
+                    export.approximation = new PseudoPeriodicFunction(Long.parseLong(fields.get("begin")), Long.parseLong(fields.get("length")), Double.parseDouble(fields.get("increment")));
+                    break;
+                case "step":
+                    export.addStep(Long.parseLong(fields.get("time")), Double.parseDouble(fields.get("value")));
+                    break;
+                case "traffic":
+                    export.addTraffic(Long.parseLong(fields.get("time")), Double.parseDouble(fields.get("value")));
+                    break;
+                default:
+                    throw new IOException("Unknown record type '" + type + "'");
+            }
+        }
+        return export;
+    }
+}
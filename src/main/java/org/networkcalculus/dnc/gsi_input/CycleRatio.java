@@ -0,0 +1,291 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cycle of blocks with the highest traffic per time, found with Howard's policy iteration. Its ratio of traffic to
+ * period is the exact long-term rate of a protocol graph, so the traffic in any interval of length <code>t</code> is
+ * at most <code>rate * t + burst</code>.
+ */
+public class CycleRatio {
+    // Tolerance for comparing potentials, which are in the order of the traffic of a block
+    private static final double EPSILON = 1e-9;
+
+    private final List<Block> cycle;
+    private final long cycleTraffic;
+    private final long cycleLength;
+    private final double rate;
+    private final double burst;
+
+    public CycleRatio(Collection<Block> blocks) {
+        List<Block> nodes = new ArrayList<>(blocks);
+        Map<Block, Integer> indices = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+        }
+
+        int n = nodes.size();
+        int[][] successors = new int[n][];
+        long[] traffic = new long[n];
+        long[] length = new long[n];
+        for (int i = 0; i < n; i++) {
+            Block block = nodes.get(i);
+            successors[i] = block.getNextBlocks().stream()
+                    .filter(indices::containsKey)
+                    .mapToInt(indices::get)
+                    .toArray();
+            traffic[i] = block.totalTrafficInBlock();
+            length[i] = block.getPeriod();
+        }
+
+        int[] best = maximumRatioCycle(successors, traffic, length);
+        List<Block> cycle = new ArrayList<>(best.length);
+        long cycleTraffic = 0;
+        long cycleLength = 0;
+        for (int node : best) {
+            cycle.add(nodes.get(node));
+            cycleTraffic += traffic[node];
+            cycleLength += length[node];
+        }
+
+        this.cycle = Collections.unmodifiableList(cycle);
+        this.cycleTraffic = cycleTraffic;
+        this.cycleLength = cycleLength;
+        this.rate = cycleLength == 0 ? 0 : cycleTraffic / (double) cycleLength;
+        this.burst = burst(nodes, successors, traffic, length, rate);
+    }
+
+    /**
+     * Find the cycle maximizing the ratio of traffic to length with Howard's policy iteration. Every block following
+     * the current policy ends up on exactly one cycle, whose ratio is the value of the block. The policy is improved
+     * first by switching to successors with a higher value, then by switching to successors with a higher potential,
+     * until it is stable.
+     *
+     * @return the blocks of the best cycle in path order, or an empty array if the graph is acyclic
+     */
+    private static int[] maximumRatioCycle(int[][] successors, long[] traffic, long[] length) {
+        int n = successors.length;
+
+        // Blocks without successors are on no cycle, neither are the blocks that only lead to them
+        boolean[] removed = new boolean[n];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int u = 0; u < n; u++) {
+                if (!removed[u] && Arrays.stream(successors[u]).allMatch(v -> removed[v])) {
+                    removed[u] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        int[] policy = new int[n];
+        for (int u = 0; u < n; u++) {
+            policy[u] = -1;
+            for (int v : successors[u]) {
+                if (!removed[v]) {
+                    policy[u] = v;
+                    break;
+                }
+            }
+        }
+
+        // The value of a block is the ratio cycleTraffic / cycleLength of the cycle it leads to
+        long[] cycleTraffic = new long[n];
+        long[] cycleLength = new long[n];
+        double[] potential = new double[n];
+        int[] bestCycle = new int[0];
+
+        while (true) {
+            int[] visited = new int[n];
+            Arrays.fill(visited, -1);
+            boolean[] done = new boolean[n];
+            long bestTraffic = 0;
+            long bestLength = 0;
+            for (int start = 0; start < n; start++) {
+                if (removed[start] || done[start]) {
+                    continue;
+                }
+
+                List<Integer> path = new ArrayList<>();
+                int u = start;
+                while (!done[u] && visited[u] != start) {
+                    visited[u] = start;
+                    path.add(u);
+                    u = policy[u];
+                }
+
+                int end = path.size();
+                if (!done[u]) {
+                    // Closed a new cycle at u
+                    int from = path.indexOf(u);
+                    long sumTraffic = 0;
+                    long sumLength = 0;
+                    for (int i = from; i < path.size(); i++) {
+                        sumTraffic += traffic[path.get(i)];
+                        sumLength += length[path.get(i)];
+                    }
+                    double ratio = sumTraffic / (double) sumLength;
+                    potential[u] = 0;
+                    for (int i = path.size() - 1; i > from; i--) {
+                        int node = path.get(i);
+                        potential[node] = traffic[node] - ratio * length[node] + potential[policy[node]];
+                    }
+                    for (int i = from; i < path.size(); i++) {
+                        int node = path.get(i);
+                        cycleTraffic[node] = sumTraffic;
+                        cycleLength[node] = sumLength;
+                        done[node] = true;
+                    }
+                    if (bestLength == 0 || compare(sumTraffic, sumLength, bestTraffic, bestLength) > 0) {
+                        bestTraffic = sumTraffic;
+                        bestLength = sumLength;
+                        bestCycle = path.subList(from, path.size()).stream().mapToInt(Integer::intValue).toArray();
+                    }
+                    end = from;
+                }
+
+                for (int i = end - 1; i >= 0; i--) {
+                    int node = path.get(i);
+                    int next = policy[node];
+                    cycleTraffic[node] = cycleTraffic[next];
+                    cycleLength[node] = cycleLength[next];
+                    potential[node] = traffic[node] - length[node] * cycleTraffic[next] / (double) cycleLength[next] + potential[next];
+                    done[node] = true;
+                }
+            }
+
+            boolean improved = false;
+            for (int u = 0; u < n; u++) {
+                if (removed[u]) continue;
+                for (int v : successors[u]) {
+                    if (!removed[v] && compare(cycleTraffic[v], cycleLength[v], cycleTraffic[policy[u]], cycleLength[policy[u]]) > 0) {
+                        policy[u] = v;
+                        improved = true;
+                    }
+                }
+            }
+
+            if (!improved) {
+                for (int u = 0; u < n; u++) {
+                    if (removed[u]) continue;
+                    double ratio = cycleTraffic[u] / (double) cycleLength[u];
+                    double current = potential[u];
+                    for (int v : successors[u]) {
+                        if (removed[v] || compare(cycleTraffic[v], cycleLength[v], cycleTraffic[u], cycleLength[u]) != 0) {
+                            continue;
+                        }
+                        double candidate = traffic[u] - ratio * length[u] + potential[v];
+                        if (candidate > current + EPSILON * Math.max(1, Math.abs(current))) {
+                            policy[u] = v;
+                            current = candidate;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+
+            if (!improved) {
+                return bestCycle;
+            }
+        }
+    }
+
+    /**
+     * Compare the ratios <code>t1 / l1</code> and <code>t2 / l2</code> exactly
+     */
+    private static int compare(long t1, long l1, long t2, long l2) {
+        return Long.compare(Math.multiplyExact(t1, l2), Math.multiplyExact(t2, l1));
+    }
+
+    /**
+     * The highest traffic in excess of <code>rate * t</code> in any interval of length <code>t</code>. An interval
+     * either lies inside a block, or consists of a suffix of its first block, a sequence of full blocks and a prefix of
+     * its last block. As no cycle has a higher rate, the longest path over the excess of the full blocks is finite.
+     */
+    private static double burst(List<Block> nodes, int[][] successors, long[] traffic, long[] length, double rate) {
+        int n = nodes.size();
+        double[] prefixExcess = new double[n];
+        double[] suffixExcess = new double[n];
+        double burst = 0;
+        for (int u = 0; u < n; u++) {
+            Block block = nodes.get(u);
+            int messages = block.getNumMessages();
+
+            // A message at offset o is contained in prefixes of length o + 1 and suffixes of length period - o
+            double trafficBefore = 0;
+            double minimumStart = Double.MAX_VALUE;
+            for (int i = 0; i < messages; i++) {
+                long offset = block.getMessageOffset(i);
+                minimumStart = Math.min(minimumStart, trafficBefore - rate * offset);
+                trafficBefore += block.getMessageSize(i);
+                prefixExcess[u] = Math.max(prefixExcess[u], trafficBefore - rate * (offset + 1));
+                burst = Math.max(burst, trafficBefore - rate * (offset + 1) - minimumStart);
+            }
+
+            double trafficAfter = 0;
+            for (int i = messages - 1; i >= 0; i--) {
+                trafficAfter += block.getMessageSize(i);
+                suffixExcess[u] = Math.max(suffixExcess[u], trafficAfter - rate * (length[u] - block.getMessageOffset(i)));
+            }
+        }
+
+        // Highest excess of a sequence of full blocks followed by a prefix, starting at each block
+        double[] pathExcess = prefixExcess.clone();
+        for (int round = 0; round <= n; round++) {
+            boolean changed = false;
+            for (int u = 0; u < n; u++) {
+                for (int v : successors[u]) {
+                    double candidate = traffic[u] - rate * length[u] + pathExcess[v];
+                    if (candidate > pathExcess[u] + EPSILON * Math.max(1, Math.abs(pathExcess[u]))) {
+                        pathExcess[u] = candidate;
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) break;
+        }
+
+        for (int u = 0; u < n; u++) {
+            for (int v : successors[u]) {
+                burst = Math.max(burst, suffixExcess[u] + pathExcess[v]);
+            }
+        }
+        return burst;
+    }
+
+    /**
+     * The blocks of the cycle in path order, empty if the graph has no cycle
+     */
+    public List<Block> getCycle() {
+        return cycle;
+    }
+
+    public long getCycleTraffic() {
+        return cycleTraffic;
+    }
+
+    public long getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * The long-term traffic per time unit, 0 if the graph has no cycle
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * The lowest <code>b</code> such that <code>rate * t + b</code> bounds the traffic in all intervals
+     */
+    public double getBurst() {
+        return burst;
+    }
+}
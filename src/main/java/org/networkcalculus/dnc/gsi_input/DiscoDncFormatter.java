@@ -1,23 +1,26 @@
 package org.networkcalculus.dnc.gsi_input;
 
-import org.networkcalculus.dnc.curves.ArrivalCurve;
+import java.io.IOException;
+import java.io.Writer;
 
 /**
  * @author Malte Schütze
  */
-public class DiscoDncFormatter implements OutputFormatter {
+public class DiscoDncFormatter extends TextOutputFormatter {
     @Override
-    public void printPseudoperiodicFunction(ProtocolGraph graph, PseudoPeriodicFunction f, long time) {
+    public void printPseudoperiodicFunction(AnalysisResult result, Writer out) {
         // pseudoperiodic function omitted
     }
 
     @Override
-    public void printArrivalCurve(ArrivalCurve curve, long time) {
-        System.out.println(curve.toString());
+    public void printArrivalCurve(AnalysisResult result, Writer out) throws IOException {
+        // The hull only has a few segments, and DiscoDNC parses exactly the format of toString()
+        out.write(result.getConcaveHull().toString());
+        out.write("\n");
     }
 
     @Override
-    public void printMaxTraffic(ProtocolGraph graph, long time) {
+    public void printMaxTraffic(AnalysisResult result, Writer out) {
         // max traffic omitted
     }
 
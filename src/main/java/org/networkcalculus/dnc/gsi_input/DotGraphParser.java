@@ -100,7 +100,7 @@ public class DotGraphParser {
         // Transform the graph into a nicer format
         ProtocolGraph graph = new ProtocolGraph(args);
         // input block -> output block
-        Map<MutableNode, Block> blockMap = new HashMap<>();
+        Map<MutableNode, MessageBlock> blockMap = new HashMap<>();
         // input block -> output messages belonging to that block
         Map<MutableNode, List<Message>> messagesInBlock = new HashMap<>();
         // input message -> output message
@@ -115,7 +115,7 @@ public class DotGraphParser {
                 }
 
                 if (!blockMap.containsKey(vertex)) {
-                    blockMap.put(vertex, new Block(vertex.label().toString(), getAttrLong(vertex, "tPeriod")));
+                    blockMap.put(vertex, new MessageBlock(vertex.label().toString(), getAttrLong(vertex, "tPeriod")));
                     messagesInBlock.put(vertex, new ArrayList<>());
                 }
             } else if (getAttrString(vertex, "type").equalsIgnoreCase("TMsg")) {
@@ -133,7 +133,7 @@ public class DotGraphParser {
 
                 // Current now points to a block
                 if (!blockMap.containsKey(current)) {
-                    blockMap.put(current, new Block(current.label().toString(), getAttrLong(current, "tPeriod")));
+                    blockMap.put(current, new MessageBlock(current.label().toString(), getAttrLong(current, "tPeriod")));
                     messagesInBlock.put(current, new ArrayList<>());
                 }
 
@@ -160,9 +160,9 @@ public class DotGraphParser {
         }
 
         // First add messages
-        for (Map.Entry<MutableNode, Block> entry : blockMap.entrySet()) {
+        for (Map.Entry<MutableNode, MessageBlock> entry : blockMap.entrySet()) {
             MutableNode inputBlock = entry.getKey();
-            Block block = entry.getValue();
+            MessageBlock block = entry.getValue();
 
             graph.addBlock(block);
 
@@ -175,7 +175,7 @@ public class DotGraphParser {
 
         // Then link blocks between each other, because we rely on all messages
         // being added for sanity checks
-        for (Map.Entry<MutableNode, Block> entry : blockMap.entrySet()) {
+        for (Map.Entry<MutableNode, MessageBlock> entry : blockMap.entrySet()) {
             MutableNode inputBlock = entry.getKey();
             Block block = entry.getValue();
 
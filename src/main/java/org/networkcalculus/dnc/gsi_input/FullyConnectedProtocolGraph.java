@@ -1,5 +1,8 @@
 package org.networkcalculus.dnc.gsi_input;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -12,6 +15,41 @@ public class FullyConnectedProtocolGraph extends ProtocolGraph {
         super(args);
     }
 
+    /**
+     * Remove all blocks that are dominated by another block (see {@link Block#dominates(Block)}). As every block is
+     * connected to every other block, a dominated block never contributes to the max traffic of the graph.
+     * This should be called before any traffic has been calculated.
+     *
+     * @return the number of removed blocks
+     */
+    public int pruneDominatedBlocks() {
+        // Only shorter blocks with more traffic can dominate, so check those first
+        List<Block> candidates = new ArrayList<>(getBlocks());
+        candidates.sort(Comparator.comparingLong(Block::getPeriod)
+                .thenComparing(Comparator.comparingInt(Block::totalTrafficInBlock).reversed())
+                .thenComparing(Block::getCompactLabel));
+
+        List<Block> kept = new ArrayList<>();
+        List<Block> dominated = new ArrayList<>();
+        for (Block candidate : candidates) {
+            if (kept.stream().anyMatch(block -> block.dominates(candidate))) {
+                dominated.add(candidate);
+                continue;
+            }
+
+            // Blocks of equal length and traffic may be dominated by a block sorted after them
+            List<Block> replaced = kept.stream()
+                    .filter(candidate::dominates)
+                    .collect(Collectors.toList());
+            kept.removeAll(replaced);
+            dominated.addAll(replaced);
+            kept.add(candidate);
+        }
+
+        dominated.forEach(this::removeBlock);
+        return dominated.size();
+    }
+
     public FullyConnectedRescaledProtocolGraph rescale() {
         long blockLength = shortestBlockLength();
         Set<Block> rescaledBlocks = this.getBlocks().stream()
@@ -30,15 +68,7 @@ public class FullyConnectedProtocolGraph extends ProtocolGraph {
     }
 
     public Block rescaleBlock(Block block, long length) {
-        Block result = new Block(block.getLabel(), length);
-        double scalingFactor = length / (double) block.getPeriod();
-        for (Message msg : block) {
-            long offset = Math.round(scalingFactor * msg.getOffset());
-            Message clone = new Message(msg.getLabel(), result, offset, msg.getSize());
-            result.addMessage(clone);
-        }
-
-        return result;
+        return new RescaledBlock(block, length);
     }
 
     public PseudoPeriodicFunction approximateMostEfficientLoop() {
@@ -64,11 +94,12 @@ public class FullyConnectedProtocolGraph extends ProtocolGraph {
 
         long timeInSuffix = 0;
         double maxTraffic = 0;
+        StepFunction.Cursor suffix = suffixCursor();
         while (timeInSuffix < longestBlockLen) {
             if (args.verbose) System.out.println("[2] " + timeInSuffix + "/" + longestBlockLen);
-            double trafficInSuffix = maxSuffix(timeInSuffix);
+            double trafficInSuffix = maxSuffix(timeInSuffix, suffix);
             maxTraffic = Math.max(maxTraffic, trafficInSuffix + splitTrafficBetweenLoopAndPrefix(2 * longestBlockLen - timeInSuffix));
-            timeInSuffix = firstTimeExceedingInSuffix(trafficInSuffix);
+            timeInSuffix = firstTimeExceedingInSuffix(trafficInSuffix, suffix);
         }
 
         return maxTraffic;
@@ -79,10 +110,11 @@ public class FullyConnectedProtocolGraph extends ProtocolGraph {
 
         long timeInPrefix = 0;
         double maxTraffic = 0;
+        StepFunction.Cursor prefix = prefixCursor();
         while (timeInPrefix < time) {
-            double trafficInPrefix = maxPrefix(timeInPrefix);
+            double trafficInPrefix = maxPrefix(timeInPrefix, prefix);
             maxTraffic = Math.max(maxTraffic, (time - timeInPrefix) * highestAverageTraffic + trafficInPrefix);
-            timeInPrefix = firstTimeExceedingInPrefix(trafficInPrefix);
+            timeInPrefix = firstTimeExceedingInPrefix(trafficInPrefix, prefix);
         }
 
         return maxTraffic;
@@ -23,43 +23,38 @@ public class FullyConnectedRescaledProtocolGraph extends ProtocolGraph {
             value = maxTraffic(time);
         }
 
+        // The divided traffic is one convolution over the whole range, which is walked along its steps
+        MaxPlusConvolution divided = dividedTraffic(2 * shortestBlockLen);
         time = shortestBlockLen;
         while (time < 2 * shortestBlockLen) {
             if (args.verbose) System.out.println("[2] " + (time + shortestBlockLen) + " / " + (3 * shortestBlockLen));
-            value = divideTrafficBetweenPrefixAndSuffix(time);
+            value = divided.getValue(time);
             function.setValueAt(shortestBlockLen + time, highestBlockTraffic + value);
-            time = nextStepForDividedTraffic(value);
+            time = divided.firstTimeExceeding(value);
         }
 
-        function.setValueAt(3 * shortestBlockLen, highestBlockTraffic + divideTrafficBetweenPrefixAndSuffix(2 * shortestBlockLen));
+        function.setValueAt(3 * shortestBlockLen, highestBlockTraffic + divided.getValue(2 * shortestBlockLen));
         return function;
     }
 
     public long nextStepForDividedTraffic(double valueToExceed) {
-        long minTime = Math.min(firstTimeExceedingInSuffix(valueToExceed), firstTimeExceedingInPrefix(valueToExceed));
-        double inPrefixTraffic = 0;
-        while (inPrefixTraffic <= valueToExceed){
-            long inPrefixTime = firstTimeExceedingInPrefix(inPrefixTraffic);
-            inPrefixTraffic = maxPrefix(inPrefixTime);
-            minTime = Math.min(minTime, inPrefixTime + firstTimeExceedingInSuffix(valueToExceed - inPrefixTraffic));
-        }
-
-        return minTime;
+        // Either the whole traffic lies in the suffix, or it lies in the prefix and the suffix adds one time unit
+        long bound = Math.min(firstTimeExceedingInSuffix(valueToExceed), firstTimeExceedingInPrefix(valueToExceed) + 1);
+        return Math.min(bound, dividedTraffic(bound).firstTimeExceeding(valueToExceed));
     }
 
+    /**
+     * The max traffic in an interval of length <code>time</code> that consists of a prefix, followed by a non-empty
+     * suffix of possibly different blocks
+     */
     public double divideTrafficBetweenPrefixAndSuffix(long time) {
-        long inPrefixTime = 0;
-        double inPrefixTraffic = 0;
-        double maxTraffic = 0;
-        while (inPrefixTime < time) {
-            double value = maxSuffix(time - inPrefixTime) + inPrefixTraffic;
-            if (value > maxTraffic) {
-                maxTraffic = value;
-            }
-            inPrefixTime = firstTimeExceedingInPrefix(inPrefixTraffic);
-            inPrefixTraffic = maxPrefix(inPrefixTime);
-        }
+        return dividedTraffic(time).getValue(time);
+    }
 
-        return maxTraffic;
+    /**
+     * The max-plus convolution of the prefix and suffix envelopes up to <code>horizon</code>
+     */
+    private MaxPlusConvolution dividedTraffic(long horizon) {
+        return new MaxPlusConvolution(prefixEnvelope(horizon), suffixEnvelope(horizon), horizon);
     }
 }
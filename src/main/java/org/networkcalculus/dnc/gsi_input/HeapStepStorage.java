@@ -0,0 +1,50 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.Arrays;
+
+/**
+ * Step function storage in primitive arrays on the heap
+ */
+class HeapStepStorage extends StepStorage {
+    private long[] times = new long[4];
+    private double[] values = new double[4];
+    private int size;
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    long getTime(int idx) {
+        return times[idx];
+    }
+
+    @Override
+    double getValue(int idx) {
+        return values[idx];
+    }
+
+    @Override
+    void add(long time, double value) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        times[size] = time;
+        values[size] = value;
+        size++;
+    }
+
+    @Override
+    void setValue(int idx, double value) {
+        values[idx] = value;
+    }
+
+    @Override
+    void truncate(int size) {
+        this.size = size;
+        times = Arrays.copyOf(times, Math.max(size, 1));
+        values = Arrays.copyOf(values, Math.max(size, 1));
+    }
+}
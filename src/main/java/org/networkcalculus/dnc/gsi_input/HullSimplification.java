@@ -0,0 +1,187 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.PriorityQueue;
+
+import org.networkcalculus.dnc.Calculator;
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+import org.networkcalculus.dnc.curves.Curve;
+import org.networkcalculus.dnc.curves.LinearSegment;
+import org.networkcalculus.dnc.numbers.Num;
+
+/**
+ * A concave upper bound of a concave arrival curve (see {@link PseudoPeriodicFunction#concaveHull()}) that uses at
+ * most a given number of segments.
+ * <p>
+ * A segment is removed by extending its two neighbours until they meet, which keeps the curve concave and adds the
+ * triangle between the removed segment and the intersection. Segments are removed greedily in order of the smallest
+ * added area until the curve fits the budget. The first and the final, unbounded segment are never
+ * removed.
+ */
+public class HullSimplification {
+    private Num num_factory = Num.getFactory(Calculator.getInstance().getNumBackend());
+    private Curve curve_factory = Calculator.getInstance().getCurveFactory();
+
+    private final ArrivalCurve original;
+    private final ArrivalCurve curve;
+    private final double addedArea;
+    private final double maxOverestimation;
+
+    /**
+     * @param hull        a concave, continuous arrival curve
+     * @param maxSegments the maximum number of segments of the result, including the first one. 0 for no limit
+     */
+    public HullSimplification(ArrivalCurve hull, int maxSegments) {
+        if (maxSegments < 0 || maxSegments == 1) {
+            throw new IllegalArgumentException("Invalid number of segments " + maxSegments + " (must be 0 or at least 2)");
+        }
+        this.original = hull;
+
+        int n = hull.getSegmentCount();
+        if (maxSegments == 0 || n <= maxSegments) {
+            this.curve = hull;
+            this.addedArea = 0;
+            this.maxOverestimation = 0;
+            return;
+        }
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] grad = new double[n];
+        for (int i = 0; i < n; i++) {
+            LinearSegment segment = hull.getSegment(i);
+            x[i] = segment.getX().doubleValue();
+            y[i] = segment.getY().doubleValue();
+            grad[i] = segment.getGrad().doubleValue();
+        }
+
+        // Doubly linked list of the remaining segments, with a version per segment to skip outdated candidates
+        int[] prev = new int[n];
+        int[] next = new int[n];
+        int[] version = new int[n];
+        boolean[] moved = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            prev[i] = i - 1;
+            next[i] = i + 1;
+        }
+
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        for (int k = 1; k < n - 1; k++) {
+            queue.add(new Candidate(k, 0, removalArea(x, y, grad, prev[k], k, next[k])));
+        }
+
+        double area = 0;
+        int segments = n;
+        while (segments > maxSegments) {
+            Candidate candidate = queue.poll();
+            int k = candidate.segment;
+            if (candidate.version != version[k]) {
+                continue;
+            }
+
+            int p = prev[k];
+            int q = next[k];
+            double start = intersection(x, y, grad, p, k, q);
+            y[q] = Math.max(y[q] + grad[q] * (start - x[q]), y[p] + grad[p] * (start - x[p]));
+            x[q] = start;
+            moved[q] = true;
+            area += candidate.area;
+
+            next[p] = q;
+            prev[q] = p;
+            version[k] = -1;
+            segments--;
+
+            // Removing k moved the start of q, which changes the candidates on both sides
+            if (p > 0) {
+                version[p]++;
+                queue.add(new Candidate(p, version[p], removalArea(x, y, grad, prev[p], p, q)));
+            }
+            if (q < n - 1) {
+                version[q]++;
+                queue.add(new Candidate(q, version[q], removalArea(x, y, grad, p, q, next[q])));
+            }
+        }
+
+        ArrivalCurve result = curve_factory.createArrivalCurve(segments);
+        double overestimation = 0;
+        int originalIdx = 0;
+        for (int i = 0, pos = 0; i < n; i = next[i], pos++) {
+            if (!moved[i]) {
+                result.setSegment(pos, hull.getSegment(i));
+            } else {
+                result.setSegment(pos, LinearSegment.createLinearSegment(num_factory.create(x[i]), num_factory.create(y[i]),
+                        hull.getSegment(i).getGrad(), hull.getSegment(i).isLeftopen()));
+            }
+
+            // The difference of the two concave curves is largest at a vertex of the upper one
+            while (originalIdx + 1 < n && hull.getSegment(originalIdx + 1).getX().doubleValue() <= x[i]) {
+                originalIdx++;
+            }
+            LinearSegment defining = hull.getSegment(originalIdx);
+            double value = defining.getY().doubleValue() + defining.getGrad().doubleValue() * (x[i] - defining.getX().doubleValue());
+            overestimation = Math.max(overestimation, y[i] - value);
+        }
+
+        this.curve = result;
+        this.addedArea = area;
+        this.maxOverestimation = overestimation;
+    }
+
+    /**
+     * The x-coordinate at which the segments before and after <code>k</code> meet if <code>k</code> is removed
+     */
+    private static double intersection(double[] x, double[] y, double[] grad, int p, int k, int q) {
+        if (grad[p] <= grad[q]) {
+            return x[k];
+        }
+        double start = (y[q] - grad[q] * x[q] - y[p] + grad[p] * x[p]) / (grad[p] - grad[q]);
+        return Math.min(Math.max(start, x[k]), x[q]);
+    }
+
+    private static double removalArea(double[] x, double[] y, double[] grad, int p, int k, int q) {
+        double start = intersection(x, y, grad, p, k, q);
+        double value = y[q] + grad[q] * (start - x[q]);
+        // Triangle between the start of k, the start of q and the intersection
+        double cross = (x[q] - x[k]) * (value - y[k]) - (y[q] - y[k]) * (start - x[k]);
+        return Math.abs(cross) / 2;
+    }
+
+    public ArrivalCurve getOriginal() {
+        return original;
+    }
+
+    public ArrivalCurve getCurve() {
+        return curve;
+    }
+
+    /**
+     * The area between the simplified and the original curve
+     */
+    public double getAddedArea() {
+        return addedArea;
+    }
+
+    /**
+     * The largest vertical distance between the simplified and the original curve
+     */
+    public double getMaxOverestimation() {
+        return maxOverestimation;
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        final int segment;
+        final int version;
+        final double area;
+
+        Candidate(int segment, int version, double area) {
+            this.segment = segment;
+            this.version = version;
+            this.area = area;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(area, other.area);
+        }
+    }
+}
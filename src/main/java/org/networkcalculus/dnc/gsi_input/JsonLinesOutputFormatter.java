@@ -0,0 +1,63 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+import org.networkcalculus.dnc.curves.LinearSegment;
+
+/**
+ * Writes results as one JSON object per line, with the same records as {@link CsvOutputFormatter}:
+ * <code>{"type":"segment","x":..,"y":..,"gradient":..,"leftopen":..}</code>,
+ * <code>{"type":"period","begin":..,"length":..,"increment":..}</code>,
+ * <code>{"type":"step","time":..,"value":..}</code> and <code>{"type":"traffic","time":..,"value":..}</code>.
+ * See {@link CurveExport#readJsonLines(java.io.Reader)} for reading it back.
+ */
+public class JsonLinesOutputFormatter extends TextOutputFormatter {
+    @Override
+    public void printPseudoperiodicFunction(AnalysisResult result, Writer out) throws IOException {
+        PseudoPeriodicFunction f = result.getApproximation();
+        out.write("{\"type\":\"period\",\"begin\":" + f.periodBegin + ",\"length\":" + f.periodLength
+                + ",\"increment\":" + number(f.periodIncrement) + "}\n");
+        for (int i = 0; i < f.incrementTimeSteps.size(); i++) {
+            out.write("{\"type\":\"step\",\"time\":" + f.incrementTimeSteps.get(i) + ",\"value\":" + number(f.incrementValues.get(i)) + "}\n");
+        }
+    }
+
+    @Override
+    public void printArrivalCurve(AnalysisResult result, Writer out) throws IOException {
+        ArrivalCurve curve = result.getConcaveHull();
+        for (int i = 0; i < curve.getSegmentCount(); i++) {
+            LinearSegment segment = curve.getSegment(i);
+            out.write("{\"type\":\"segment\",\"x\":" + number(segment.getX().doubleValue())
+                    + ",\"y\":" + number(segment.getY().doubleValue())
+                    + ",\"gradient\":" + number(segment.getGrad().doubleValue())
+                    + ",\"leftopen\":" + segment.isLeftopen() + "}\n");
+        }
+    }
+
+    @Override
+    public void printMaxTraffic(AnalysisResult result, Writer out) throws IOException {
+        StepFunction f = result.getMaxTraffic();
+        for (int i = 0; i < f.getNumSteps(); i++) {
+            out.write("{\"type\":\"traffic\",\"time\":" + f.getTimeAt(i) + ",\"value\":" + number(f.getValueAt(i)) + "}\n");
+        }
+    }
+
+    /**
+     * JSON has no representation for infinite values, write them as strings
+     */
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "\"" + value + "\"";
+    }
+
+    @Override
+    public String toString() {
+        return "jsonl";
+    }
+
+    @Override
+    public boolean isMachineReadable() {
+        return true;
+    }
+}
@@ -0,0 +1,204 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A label stored as a sequence of ids into a symbol table, so every distinct name is only kept once.
+ * Labels of super blocks are the sequence of the labels of their parts and only rendered (joined by "--") when needed.
+ * <p>
+ * All labels share the current symbol table, which only lives as long as some label refers to it, so the names of
+ * graphs that are no longer used do not stay in memory. Names of blocks must not contain the separator or start or end
+ * with '-', so a rendered label splits back into its parts unambiguously.
+ */
+public final class Label implements Comparable<Label> {
+    public static final String SEPARATOR = "--";
+
+    private static WeakReference<SymbolTable> current = new WeakReference<>(null);
+
+    private final SymbolTable table;
+    private final int[] ids;
+
+    private Label(SymbolTable table, int[] ids) {
+        this.table = table;
+        this.ids = ids;
+    }
+
+    private static synchronized SymbolTable currentTable() {
+        SymbolTable table = current.get();
+        if (table == null) {
+            table = new SymbolTable();
+            current = new WeakReference<>(table);
+        }
+        return table;
+    }
+
+    /**
+     * Add a symbol, such as a message label, to the symbol table of this label
+     *
+     * @return the id of the symbol, valid as long as this label is used
+     */
+    int intern(String symbol) {
+        return table.intern(symbol);
+    }
+
+    /**
+     * The symbol of an id returned by {@link #intern(String)}
+     */
+    String symbol(int id) {
+        return table.symbol(id);
+    }
+
+    public static Label of(String label) {
+        if (label.contains(SEPARATOR) || label.startsWith("-") || label.endsWith("-")) {
+            throw new IllegalArgumentException("Invalid label " + label + " (must not contain \"" + SEPARATOR
+                    + "\" or start or end with '-')");
+        }
+        SymbolTable table = currentTable();
+        return new Label(table, new int[]{table.intern(label)});
+    }
+
+    public static Label concat(List<Label> labels) {
+        if (labels.isEmpty()) {
+            throw new IllegalArgumentException("No labels to concatenate");
+        }
+        SymbolTable table = labels.get(0).table;
+        int[] ids = new int[labels.stream().mapToInt(l -> l.ids.length).sum()];
+        int length = 0;
+        for (Label label : labels) {
+            if (label.table != table) {
+                throw new IllegalArgumentException("Labels " + labels + " use different symbol tables");
+            }
+            System.arraycopy(label.ids, 0, ids, length, label.ids.length);
+            length += label.ids.length;
+        }
+        return new Label(table, ids);
+    }
+
+    /**
+     * Find an existing label by its rendered form, without adding any new symbols
+     *
+     * @return the label, or null if it contains unknown symbols
+     */
+    static Label find(String label) {
+        SymbolTable table = currentTable();
+        String[] parts = label.split(SEPARATOR, -1);
+        int[] ids = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            Integer id = table.lookup(parts[i]);
+            if (id == null) {
+                return null;
+            }
+            ids[i] = id;
+        }
+        return new Label(table, ids);
+    }
+
+    /**
+     * Compares the rendered labels character by character, without rendering them
+     */
+    @Override
+    public int compareTo(Label other) {
+        Chars a = new Chars(this);
+        Chars b = new Chars(other);
+        while (true) {
+            int x = a.next();
+            int y = b.next();
+            if (x != y || x < 0) {
+                return Integer.compare(x, y);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Label && Arrays.equals(ids, ((Label) o).ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    @Override
+    public String toString() {
+        if (ids.length == 1) {
+            return symbol(ids[0]);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(symbol(ids[i]));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The characters of a rendered label, followed by -1
+     */
+    private static class Chars {
+        private final Label label;
+        private int part = 0;
+        private String text;
+        private int pos = 0;
+
+        Chars(Label label) {
+            this.label = label;
+            this.text = label.symbol(label.ids[0]);
+        }
+
+        int next() {
+            while (pos == text.length()) {
+                if (++part == 2 * label.ids.length - 1) {
+                    return -1;
+                }
+                text = part % 2 == 1 ? SEPARATOR : label.symbol(label.ids[part / 2]);
+                pos = 0;
+            }
+            return text.charAt(pos++);
+        }
+    }
+
+    /**
+     * Symbols by id. Ids are only handed out after their symbol is stored, so looking up symbols needs no lock: an
+     * array that does not hold a symbol yet can only be read by a thread that has not seen its id.
+     */
+    private static class SymbolTable {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] symbols = new String[64];
+        private int size;
+
+        int intern(String symbol) {
+            Integer id = ids.get(symbol);
+            return id != null ? id : add(symbol);
+        }
+
+        private synchronized int add(String symbol) {
+            Integer id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+
+            if (size == symbols.length) {
+                symbols = Arrays.copyOf(symbols, 2 * size);
+            }
+            symbols[size] = symbol;
+            ids.put(symbol, size);
+            return size++;
+        }
+
+        String symbol(int id) {
+            return symbols[id];
+        }
+
+        Integer lookup(String symbol) {
+            return ids.get(symbol);
+        }
+    }
+}
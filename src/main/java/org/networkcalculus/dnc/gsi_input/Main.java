@@ -1,8 +1,12 @@
 package org.networkcalculus.dnc.gsi_input;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
@@ -13,6 +17,9 @@ import org.apache.commons.lang3.time.DurationFormatUtils;
  * @author Malte Schütze
  */
 public class Main {
+    // Default threshold of the subadditive heuristic with period detection, in longest block plus cycle lengths
+    private static final long DETECT_PERIOD_FACTOR = 64;
+
     public static void main(String... argv) throws IOException {
         Args args = new Args();
         JCommander parser = new JCommander.Builder().addObject(args).build();
@@ -40,37 +47,135 @@ public class Main {
             System.exit(1);
         }
 
+        if (args.output == null && args.formatter.isMachineReadable()) {
+            System.err.println(args.formatter + ": Format needs an output file (--output), status messages are written to stdout");
+            System.exit(1);
+        }
+
+        if (args.plotPoints != 0 && args.formatter instanceof MatplotlibOutputFormatter) {
+            try {
+                ((MatplotlibOutputFormatter) args.formatter).setMaxPoints(args.plotPoints);
+            } catch (IllegalArgumentException ex) {
+                System.err.println(ex.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (args.threads < 1) {
+            System.err.println(args.threads + ": Invalid number of threads (must be >= 1)");
+            System.exit(1);
+        }
+
+        if (args.maxSegments < 0 || args.maxSegments == 1) {
+            System.err.println(args.maxSegments + ": Invalid number of segments (must be 0 or at least 2)");
+            System.exit(1);
+        }
+
+        if (args.swapDirectory != null) {
+            if (!args.swapDirectory.isDirectory()) {
+                System.err.println(args.swapDirectory + ": Not a directory");
+                System.exit(1);
+            }
+            MappedStepStorage.setSwapDirectory(args.swapDirectory);
+        }
+
+        StepFunction.setDenseIndexEnabled(args.denseIndex);
 
         System.out.println("Parsing graph at '" + args.path + "'");
         ProtocolGraph graph = new DotGraphParser(new FileInputStream(args.path), args).parse();
         System.out.println("Done (" + graph.getBlockCount() + " blocks)");
 
+        if (args.minimize) {
+            graph = graph.quotient();
+            System.out.println("Merged equivalent blocks (" + graph.getBlockCount() + " blocks)");
+        }
+
+        long timeBase = graph.timeBase();
+        long timeUnit = Math.max(timeBase, args.quantization);
+        ProtocolGraph reduced;
+        if (timeUnit == timeBase) {
+            reduced = graph.reduceTimeBase(timeBase);
+            if (timeBase > 1) {
+                System.out.println("Reduced time base to " + timeBase);
+            }
+        } else {
+            if (timeUnit > graph.shortestBlockLength()) {
+                System.err.println(timeUnit + ": Invalid quantization grid (must not exceed shortest block length " + graph.shortestBlockLength() + ")");
+                System.exit(1);
+            }
+            reduced = graph.quantize(timeUnit);
+
+            double periodError = 0;
+            for (Block block : graph.getBlocks()) {
+                periodError = Math.max(periodError, (block.getPeriod() % timeUnit) / (double) block.getPeriod());
+            }
+            System.out.println("Quantized to a grid of " + timeUnit + " (periods shortened by up to "
+                    + String.format("%.2f", 100 * periodError) + "%, steps moved up to " + timeUnit + " earlier)");
+        }
+
         int iterations = args.benchmark ? args.benchmarkIterations : 1;
         if (args.benchmark && args.benchmarkIterations <= 1) {
             System.err.println(args.benchmarkIterations + ": Invalid number of benchmark iterations (must be >= 2)");
             System.exit(1);
         }
 
-        long[] times = new long[iterations];
-        for (int i = 0; i < iterations; i++) {
-            long time = System.currentTimeMillis();
-
-            switch (args.heuristic) {
-                case SUBADDITIVE:
-                    approximateSubadditive(args, graph);
-                    break;
-                case LOOP:
-                    approximateLoop(args, graph);
-                    break;
-                case RESCALE:
-                    approximateRescale(args, graph);
-                    break;
+        // Closing the output flushes it, but must not close stdout
+        OutputStream target = args.output == null ? new FilterOutputStream(System.out) {
+            @Override
+            public void close() throws IOException {
+                flush();
             }
+        } : new FileOutputStream(args.output);
+
+        long[] times = new long[iterations];
+        try (OutputStream out = new BufferedOutputStream(target)) {
+            for (int i = 0; i < iterations; i++) {
+                long time = System.currentTimeMillis();
 
-            long delta = System.currentTimeMillis() - time;
-            times[i] = delta;
-            if (args.verbose) {
-                System.out.println("Finished in " + DurationFormatUtils.formatDurationHMS(delta));
+                PseudoPeriodicFunction f;
+                if (args.components) {
+                    f = approximateByComponent(args, graph, reduced, timeUnit);
+                } else {
+                    switch (args.heuristic) {
+                        case LOOP:
+                            f = approximateLoop(args, graph, reduced, timeUnit);
+                            break;
+                        case RESCALE:
+                            f = approximateRescale(args, graph);
+                            break;
+                        case CYCLE:
+                            f = approximateCycleRatio(args, graph, reduced, timeUnit);
+                            break;
+                        default:
+                            f = approximateSubadditive(args, graph, reduced, timeUnit);
+                            break;
+                    }
+                }
+
+                long horizon = args.threshold > 0 ? 2 * args.threshold : f.periodBegin + 3 * f.periodLength;
+                AnalysisResult result = new AnalysisResult(graph, f, horizon, args.verbose, System.currentTimeMillis() - time, args.maxSegments);
+                HullSimplification simplification = result.getHullSimplification();
+                if (simplification.getCurve() != simplification.getOriginal()) {
+                    System.out.println("Reduced arrival curve from " + simplification.getOriginal().getSegmentCount() + " to "
+                            + simplification.getCurve().getSegmentCount() + " segments (added area "
+                            + String.format("%.4g", simplification.getAddedArea()) + ", overestimation up to "
+                            + String.format("%.4g", simplification.getMaxOverestimation()) + ")");
+                }
+                // An export holds a single result, so benchmarks only export their last iteration
+                if (i == iterations - 1 || !args.formatter.isMachineReadable()) {
+                    if (args.verbose) {
+                        args.formatter.printMaxTraffic(result, out);
+                        args.formatter.printPseudoperiodicFunction(result, out);
+                    }
+                    args.formatter.printArrivalCurve(result, out);
+                    out.flush();
+                }
+
+                long delta = System.currentTimeMillis() - time;
+                times[i] = delta;
+                if (args.verbose) {
+                    System.out.println("Finished in " + DurationFormatUtils.formatDurationHMS(delta));
+                }
             }
         }
 
@@ -93,24 +198,22 @@ public class Main {
         }
     }
 
-    private static void approximateSubadditive(Args args, ProtocolGraph graph) {
+    private static PseudoPeriodicFunction approximateSubadditive(Args args, ProtocolGraph graph, ProtocolGraph reduced, long timeUnit) {
         long threshold = args.threshold;
-        if (threshold == 0) {
+        if (threshold == 0 && args.detectPeriod) {
+            // The trace stops as soon as it is periodic, so the threshold only limits graphs that never are
+            threshold = DETECT_PERIOD_FACTOR * (graph.longestBlockLength() + graph.maximumCycleRatio().getCycleLength());
+        } else if (threshold == 0) {
             threshold = graph.longestBlockLength() * 4;
         }
 
-        System.out.println("Using a threshold of " + threshold);
-        PseudoPeriodicFunction f = graph.approximateSubadditive(threshold);
+        System.out.println("Using a threshold of " + threshold + (args.detectPeriod ? " (or until periodic)" : ""));
+        PseudoPeriodicFunction f = toOriginalTime(graph, reduced.approximateSubadditive((threshold + timeUnit - 1) / timeUnit), timeUnit);
         System.out.println("Approximation created");
-
-        if (args.verbose) {
-            args.formatter.printMaxTraffic(graph, args.threshold > 0 ? 2 * threshold : f.periodBegin + 3 * f.periodLength);
-            args.formatter.printPseudoperiodicFunction(graph, f, args.threshold > 0 ? 2 * threshold : f.periodBegin + 3 * f.periodLength);
-        }
-        args.formatter.printArrivalCurve(f.concaveHull(), args.threshold > 0 ? 2 * threshold : f.periodBegin + 3 * f.periodLength);
+        return f;
     }
 
-    private static void approximateLoop(Args args, ProtocolGraph graph) {
+    private static PseudoPeriodicFunction approximateLoop(Args args, ProtocolGraph graph, ProtocolGraph reduced, long timeUnit) {
         int numBlocks = args.numBlocks;
         if (numBlocks == 0) {
             long fit = 20_000_000_000L / graph.longestBlockLength();
@@ -118,18 +221,19 @@ public class Main {
         }
 
         System.out.println("Using " + numBlocks + " consecutive blocks");
-        FullyConnectedProtocolGraph fcGraph = graph.fullyConnected(numBlocks);
+        FullyConnectedProtocolGraph fcGraph = reduced.fullyConnected(numBlocks);
         System.out.println("Fully connected model created");
-        PseudoPeriodicFunction f = fcGraph.approximateMostEfficientLoop();
+        pruneDominatedBlocks(args, fcGraph);
+        PseudoPeriodicFunction f = toOriginalTime(graph, fcGraph.approximateMostEfficientLoop(), timeUnit);
         System.out.println("Approximation created");
-        if (args.verbose) {
-            args.formatter.printMaxTraffic(graph, args.threshold > 0 ? 2 * args.threshold :  f.periodBegin + 3 * f.periodLength);
-            args.formatter.printPseudoperiodicFunction(graph, f, args.threshold > 0 ? 2 * args.threshold : f.periodBegin + 3 * f.periodLength);
-        }
-        args.formatter.printArrivalCurve(f.concaveHull(), args.threshold > 0 ? 2 * args.threshold : f.periodBegin + 3 * f.periodLength);
+        return f;
     }
 
-    private static void approximateRescale(Args args, ProtocolGraph graph) {
+    /**
+     * The rescaled offsets are rounded to the original time, which a reduced time base can not represent, so the
+     * rescaled model is always built from the original graph
+     */
+    static PseudoPeriodicFunction approximateRescale(Args args, ProtocolGraph graph) {
         int numBlocks = args.numBlocks;
         if (numBlocks == 0) {
             long fit = 20_000_000_000L / graph.shortestBlockLength();
@@ -137,14 +241,97 @@ public class Main {
         }
 
         System.out.println("Using " + numBlocks + " consecutive blocks");
-        FullyConnectedRescaledProtocolGraph rescale = graph.fullyConnected(numBlocks).rescale();
+        FullyConnectedProtocolGraph fcGraph = graph.fullyConnected(numBlocks);
+        pruneDominatedBlocks(args, fcGraph);
+        FullyConnectedRescaledProtocolGraph rescale = fcGraph.rescale();
         System.out.println("Rescaled model created");
         PseudoPeriodicFunction f = rescale.approximateTightestLoop();
         System.out.println("Approximation created");
-        if (args.verbose) {
-            args.formatter.printMaxTraffic(graph, args.threshold > 0 ? 2 * args.threshold :  f.periodBegin + 3 * f.periodLength);
-            args.formatter.printPseudoperiodicFunction(graph, f, args.threshold > 0 ? 2 * args.threshold : f.periodBegin + 3 * f.periodLength);
+        return f;
+    }
+
+    private static PseudoPeriodicFunction approximateCycleRatio(Args args, ProtocolGraph graph, ProtocolGraph reduced, long timeUnit) {
+        long horizon = args.threshold;
+        if (horizon == 0) {
+            horizon = graph.longestBlockLength() * 2;
+        }
+
+        CycleRatio cycle = graph.maximumCycleRatio();
+        System.out.println("Maximum cycle ratio " + cycle.getRate() + " (" + cycle.getCycleTraffic() + " over "
+                + cycle.getCycleLength() + " in " + cycle.getCycle().size() + " blocks), exact up to " + horizon);
+        PseudoPeriodicFunction f = toOriginalTime(graph, reduced.approximateCycleRatio((horizon + timeUnit - 1) / timeUnit), timeUnit);
+        System.out.println("Approximation created");
+        return f;
+    }
+
+    static PseudoPeriodicFunction approximateByComponent(Args args, ProtocolGraph graph, ProtocolGraph reduced, long timeUnit) {
+        long threshold = args.threshold;
+        if (threshold == 0) {
+            threshold = graph.longestBlockLength() * 4;
+        }
+
+        // Like approximateRescale, the rescaled models are built from the original graph
+        ProtocolGraph model = args.heuristic == Args.Heuristic.RESCALE ? graph : reduced;
+        long unit = model == graph ? 1 : timeUnit;
+        System.out.println("Analysing strongly connected components separately, combined up to " + threshold);
+        PseudoPeriodicFunction f = model.approximateByComponent((threshold + unit - 1) / unit, args.threads,
+                component -> approximateComponent(args, component, unit));
+        f = toOriginalTime(graph, f, unit);
+        System.out.println("Approximation created");
+        return f;
+    }
+
+    /**
+     * Run the selected heuristic on a single component, in the reduced time unit. Thresholds and model sizes that are
+     * not given explicitly are chosen for the component instead of the whole graph.
+     */
+    private static PseudoPeriodicFunction approximateComponent(Args args, ProtocolGraph component, long timeUnit) {
+        int numBlocks = args.numBlocks;
+        switch (args.heuristic) {
+            case LOOP: {
+                if (numBlocks == 0) {
+                    long fit = 20_000_000_000L / (component.longestBlockLength() * timeUnit);
+                    numBlocks = Math.max(1, (int) Math.min(8, fit));
+                }
+                FullyConnectedProtocolGraph fcGraph = component.fullyConnected(numBlocks);
+                if (args.prune) fcGraph.pruneDominatedBlocks();
+                return fcGraph.approximateMostEfficientLoop();
+            }
+            case RESCALE: {
+                if (numBlocks == 0) {
+                    long fit = 20_000_000_000L / (component.shortestBlockLength() * timeUnit);
+                    numBlocks = Math.max(1, (int) Math.min(8, fit));
+                }
+                FullyConnectedProtocolGraph fcGraph = component.fullyConnected(numBlocks);
+                if (args.prune) fcGraph.pruneDominatedBlocks();
+                return fcGraph.rescale().approximateTightestLoop();
+            }
+            case CYCLE: {
+                long horizon = args.threshold == 0
+                        ? component.longestBlockLength() * 2
+                        : (args.threshold + timeUnit - 1) / timeUnit;
+                return component.approximateCycleRatio(horizon);
+            }
+            default: {
+                long threshold = args.threshold != 0
+                        ? (args.threshold + timeUnit - 1) / timeUnit
+                        : args.detectPeriod
+                        ? DETECT_PERIOD_FACTOR * (component.longestBlockLength() + component.maximumCycleRatio().getCycleLength())
+                        : component.longestBlockLength() * 4;
+                return component.approximateSubadditive(threshold, 1);
+            }
+        }
+    }
+
+    private static PseudoPeriodicFunction toOriginalTime(ProtocolGraph graph, PseudoPeriodicFunction f, long timeUnit) {
+        // Exact if the graph was only reduced by a divisor of all its times, an upper bound if it was quantized
+        return graph.timeBase() % timeUnit == 0 ? f.scaleTime(timeUnit) : f.scaleTimeConservatively(timeUnit);
+    }
+
+    private static void pruneDominatedBlocks(Args args, FullyConnectedProtocolGraph fcGraph) {
+        if (args.prune) {
+            int pruned = fcGraph.pruneDominatedBlocks();
+            System.out.println("Pruned " + pruned + " dominated blocks (" + fcGraph.getBlockCount() + " remaining)");
         }
-        args.formatter.printArrivalCurve(f.concaveHull(), args.threshold > 0 ? 2 * args.threshold : f.periodBegin + 3 * f.periodLength);
     }
 }
@@ -0,0 +1,205 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Step function storage that keeps its breakpoints in a memory-mapped swap file instead of on the heap.
+ * <p>
+ * Breakpoints are kept on the heap until there are more than {@link #HEAP_ENTRIES}, so the many small functions of a
+ * graph never touch the swap file, while larger functions leave the heap early. Those write their breakpoints to
+ * fixed-size pages, which are cut from a few large mappings of a single shared file, so the operating system pages
+ * them in on demand and the number of mappings stays small. Pages of truncated and garbage-collected functions are
+ * reused; the swap file is deleted when the program exits.
+ */
+class MappedStepStorage extends StepStorage {
+    static final int PAGE_ENTRIES = 4096;
+    // Breakpoints a function keeps on the heap before it moves them to the swap file
+    static final int HEAP_ENTRIES = 64;
+    private static final int ENTRY_BYTES = Long.BYTES + Double.BYTES;
+    private static final int PAGE_BYTES = PAGE_ENTRIES * ENTRY_BYTES;
+    // Pages are cut from mappings of this many pages
+    private static final int PAGES_PER_MAPPING = 256;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static SwapFile swapFile;
+
+    private final SwapFile file;
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    // Breakpoints of a function with at most HEAP_ENTRIES of them, null once it is mapped
+    private HeapStepStorage heap = new HeapStepStorage();
+    private int size;
+
+    MappedStepStorage() {
+        SwapFile file = currentSwapFile();
+        List<ByteBuffer> pages = this.pages;
+        this.file = file;
+        // Must not refer to this storage, or it would never become unreachable
+        CLEANER.register(this, () -> file.release(pages));
+    }
+
+    /**
+     * Back all step functions created from now on with a swap file in <code>directory</code>, or switch back to heap
+     * storage if it is <code>null</code>
+     */
+    static synchronized void setSwapDirectory(File directory) {
+        if (directory != null && !directory.isDirectory()) {
+            throw new IllegalArgumentException(directory + ": Not a directory");
+        }
+        swapFile = directory == null ? null : new SwapFile(directory);
+    }
+
+    static synchronized boolean isEnabled() {
+        return swapFile != null;
+    }
+
+    private static synchronized SwapFile currentSwapFile() {
+        if (swapFile == null) {
+            throw new IllegalStateException("No swap directory set");
+        }
+        return swapFile;
+    }
+
+    /**
+     * The number of pages cut from the mappings of the current swap file, not counting reused pages
+     */
+    static synchronized int allocatedPages() {
+        return swapFile == null ? 0 : swapFile.allocatedPages();
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    long getTime(int idx) {
+        if (heap != null) {
+            return heap.getTime(idx);
+        }
+        return pages.get(idx / PAGE_ENTRIES).getLong((idx % PAGE_ENTRIES) * ENTRY_BYTES);
+    }
+
+    @Override
+    double getValue(int idx) {
+        if (heap != null) {
+            return heap.getValue(idx);
+        }
+        return pages.get(idx / PAGE_ENTRIES).getDouble((idx % PAGE_ENTRIES) * ENTRY_BYTES + Long.BYTES);
+    }
+
+    @Override
+    void add(long time, double value) {
+        if (heap != null) {
+            if (size < HEAP_ENTRIES) {
+                heap.add(time, value);
+                size++;
+                return;
+            }
+
+            // Outgrew the heap, move the breakpoints to the first page of the swap file
+            ByteBuffer page = file.allocate();
+            for (int i = 0; i < size; i++) {
+                page.putLong(i * ENTRY_BYTES, heap.getTime(i));
+                page.putDouble(i * ENTRY_BYTES + Long.BYTES, heap.getValue(i));
+            }
+            pages.add(page);
+            heap = null;
+        }
+
+        if (size % PAGE_ENTRIES == 0) {
+            pages.add(file.allocate());
+        }
+        ByteBuffer page = pages.get(size / PAGE_ENTRIES);
+        page.putLong((size % PAGE_ENTRIES) * ENTRY_BYTES, time);
+        page.putDouble((size % PAGE_ENTRIES) * ENTRY_BYTES + Long.BYTES, value);
+        size++;
+    }
+
+    @Override
+    void setValue(int idx, double value) {
+        if (heap != null) {
+            heap.setValue(idx, value);
+            return;
+        }
+        pages.get(idx / PAGE_ENTRIES).putDouble((idx % PAGE_ENTRIES) * ENTRY_BYTES + Long.BYTES, value);
+    }
+
+    @Override
+    void truncate(int size) {
+        this.size = size;
+        if (heap != null) {
+            heap.truncate(size);
+            return;
+        }
+
+        while (pages.size() > (size + PAGE_ENTRIES - 1) / PAGE_ENTRIES) {
+            file.release(Collections.singletonList(pages.remove(pages.size() - 1)));
+        }
+    }
+
+    /**
+     * A swap file in a directory, created on the first page. Pages are handed out from a free list of released pages
+     * first, then cut from the current mapping, which is replaced by a new one at the end of the file when it is used
+     * up.
+     */
+    private static class SwapFile {
+        private final File directory;
+        private final Deque<ByteBuffer> freePages = new ArrayDeque<>();
+        private FileChannel channel;
+        private long size;
+        private ByteBuffer mapping;
+        private int allocatedPages;
+
+        SwapFile(File directory) {
+            this.directory = directory;
+        }
+
+        synchronized ByteBuffer allocate() {
+            ByteBuffer page = freePages.poll();
+            if (page != null) {
+                return page;
+            }
+
+            try {
+                if (channel == null) {
+                    File file = File.createTempFile("stepfunctions", ".swap", directory);
+                    file.deleteOnExit();
+                    channel = new RandomAccessFile(file, "rw").getChannel();
+                }
+                if (mapping == null || mapping.remaining() < PAGE_BYTES) {
+                    long bytes = (long) PAGES_PER_MAPPING * PAGE_BYTES;
+                    mapping = channel.map(FileChannel.MapMode.READ_WRITE, size, bytes);
+                    size += bytes;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Unable to allocate step function page in " + directory, ex);
+            }
+
+            page = mapping.slice();
+            page.limit(PAGE_BYTES);
+            mapping.position(mapping.position() + PAGE_BYTES);
+            allocatedPages++;
+            return page;
+        }
+
+        synchronized void release(Collection<ByteBuffer> pages) {
+            freePages.addAll(pages);
+        }
+
+        synchronized int allocatedPages() {
+            return allocatedPages;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.networkcalculus.dnc.gsi_input;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
 
 import org.networkcalculus.dnc.Calculator;
 import org.networkcalculus.dnc.curves.ArrivalCurve;
@@ -10,78 +13,131 @@ import org.networkcalculus.dnc.numbers.Num;
 /**
  * @author Malte Schütze
  */
-public class MatplotlibOutputFormatter implements OutputFormatter {
-    public void printPseudoperiodicFunction(ProtocolGraph graph, PseudoPeriodicFunction f, long finalTime) {
-        // Run full approximation just to find the time steps
-        boolean verbose = graph.args.verbose;
-        graph.args.verbose = false;
-        List<Long> steps = graph.approximateSubadditive(finalTime).incrementTimeSteps;
-        graph.args.verbose = true;
+public class MatplotlibOutputFormatter extends TextOutputFormatter {
+    private int maxPoints;
 
-        String xs = steps.stream().map(Object::toString).collect(Collectors.joining(", "));
-        String ys = steps.stream().map(t -> Double.toString(f.getValue(t))).collect(Collectors.joining(", "));
+    /**
+     * Limit the number of points printed for each step function, 0 to print all of them. Steps are merged into
+     * buckets of equal time width, each printed at its first time with its highest value, so the plotted functions
+     * never lie below the actual ones.
+     */
+    public void setMaxPoints(int maxPoints) {
+        if (maxPoints < 0 || maxPoints == 1) {
+            throw new IllegalArgumentException("Invalid number of points " + maxPoints + " (must be 0 or at least 2)");
+        }
+        this.maxPoints = maxPoints;
+    }
+
+    public void printPseudoperiodicFunction(AnalysisResult result, Writer out) throws IOException {
+        // Evaluate the approximation at the steps of the actual max traffic
+        PseudoPeriodicFunction f = result.getApproximation();
+        long finalTime = result.getHorizon();
+        StepFunction steps = result.getMaxTraffic();
 
-        System.out.println("# Pseudo-periodic function up to " + finalTime);
-        System.out.println("plt.axvline(" + f.periodBegin + ")");
-        System.out.println("plt.axvline(" + (f.periodBegin + f.periodLength) + ")");
-        System.out.println("plt.axhline(" + f.getValue(f.periodBegin) + ")");
-        System.out.println("plt.axhline(" + f.getValue(f.periodBegin + f.periodLength) + ")");
-        System.out.println("x = [" + xs + "]");
-        System.out.println("y = [" + ys + "]");
-        System.out.println("legend_entry_pp, = plt.step(x, y, where='post', label='Pseudoperiodic Approximation')");
-        System.out.println();
+        out.write("# Pseudo-periodic function up to " + finalTime + "\n");
+        out.write("plt.axvline(" + f.periodBegin + ")\n");
+        out.write("plt.axvline(" + (f.periodBegin + f.periodLength) + ")\n");
+        out.write("plt.axhline(" + f.getValue(f.periodBegin) + ")\n");
+        out.write("plt.axhline(" + f.getValue(f.periodBegin + f.periodLength) + ")\n");
+        writeSteps(out, steps.getNumSteps(), steps::getTimeAt, i -> f.getValue(steps.getTimeAt(i)));
+        out.write("legend_entry_pp, = plt.step(x, y, where='post', label='Pseudoperiodic Approximation')\n");
+        out.write("\n");
     }
 
-    public void printArrivalCurve(ArrivalCurve curve, long finalSegmentEnd) {
-        StringBuilder xs = new StringBuilder();
-        StringBuilder ys = new StringBuilder();
-        boolean first = true;
+    public void printArrivalCurve(AnalysisResult result, Writer out) throws IOException {
+        ArrivalCurve curve = result.getConcaveHull();
+        long finalSegmentEnd = result.getHorizon();
+
+        // Every segment is drawn as a line from its start to the start of the next segment (or the final time)
+        out.write("# Concave hull up to " + finalSegmentEnd + "\n");
+        out.write("x = [");
         for (int i = 0; i < curve.getSegmentCount(); i++) {
-            if (!first) {
-                xs.append(", ");
-                ys.append(", ");
+            if (i > 0) out.write(", ");
+            out.write(Double.toString(curve.getSegment(i).getX().doubleValue()));
+            out.write(", ");
+            if (i != curve.getSegmentCount() - 1) {
+                out.write(Double.toString(curve.getSegment(i + 1).getX().doubleValue()));
             } else {
-                first = false;
+                out.write(Long.toString(finalSegmentEnd));
             }
-
-            xs.append(curve.getSegment(i).getX().doubleValue());
-            ys.append(curve.getSegment(i).getY().doubleValue());
-            xs.append(", ");
-            ys.append(", ");
+        }
+        out.write("]\ny = [");
+        for (int i = 0; i < curve.getSegmentCount(); i++) {
+            if (i > 0) out.write(", ");
+            out.write(Double.toString(curve.getSegment(i).getY().doubleValue()));
+            out.write(", ");
             if (i != curve.getSegmentCount() - 1) {
-                xs.append(curve.getSegment(i + 1).getX().doubleValue());
-                ys.append(curve.getSegment(i).f(curve.getSegment(i + 1).getX()).doubleValue());
+                out.write(Double.toString(curve.getSegment(i).f(curve.getSegment(i + 1).getX()).doubleValue()));
             } else {
-                xs.append(finalSegmentEnd);
-                ys.append(curve.getSegment(i).f(
+                out.write(Double.toString(curve.getSegment(i).f(
                 		Num.getFactory(Calculator.getInstance().getNumBackend())
-                		.create(finalSegmentEnd)).doubleValue());
+                		.create(finalSegmentEnd)).doubleValue()));
             }
         }
+        out.write("]\n");
+        out.write("legend_entry_ch, = plt.plot(x, y, label='Concave Hull')\n");
+        out.write("\n");
+    }
 
-        System.out.println("# Concave hull up to " + finalSegmentEnd);
-        System.out.println("x = [" + xs + "]");
-        System.out.println("y = [" + ys + "]");
-        System.out.println("legend_entry_ch, = plt.plot(x, y, label='Concave Hull')");
-        System.out.println();
+    public void printMaxTraffic(AnalysisResult result, Writer out) throws IOException {
+        StepFunction f = result.getMaxTraffic();
+        long maxTime = result.getHorizon();
+
+        out.write("# Actual traffic up to " + maxTime + "\n");
+        // The final point extends the plot up to the horizon
+        int numSteps = f.getNumSteps();
+        writeSteps(out, numSteps + 1,
+                i -> i < numSteps ? f.getTimeAt(i) : maxTime,
+                i -> i < numSteps ? f.getValueAt(i) : f.getValue(maxTime));
+        out.write("legend_entry_mt, = plt.step(x, y, where='post', label='Max Traffic')\n");
+        out.write("\n");
     }
 
-    public void printMaxTraffic(ProtocolGraph graph, long maxTime) {
-        boolean verbose = graph.args.verbose;
-        graph.args.verbose = false;
-        PseudoPeriodicFunction f = graph.approximateSubadditive(maxTime);
-        graph.args.verbose = verbose;
+    /**
+     * Write the points of a nondecreasing step function as x and y lists, downsampled to at most
+     * <code>maxPoints</code> points in a single pass if necessary. The last point is always kept as is.
+     */
+    void writeSteps(Writer out, int count, IntToLongFunction time, IntToDoubleFunction value) throws IOException {
+        long firstTime = count == 0 ? 0 : time.applyAsLong(0);
+        double bucketWidth = count == 0 ? 0 : (time.applyAsLong(count - 1) - firstTime) / (double) (maxPoints - 1);
+        // Without a time range, there are no buckets to merge points into
+        if (maxPoints == 0 || count <= maxPoints || bucketWidth == 0) {
+            writeList(out, "x", count, i -> Long.toString(time.applyAsLong(i)));
+            writeList(out, "y", count, i -> Double.toString(value.applyAsDouble(i)));
+            return;
+        }
+
+        long[] times = new long[maxPoints];
+        double[] values = new double[maxPoints];
+        int points = 0;
+        long currentBucket = -1;
+        for (int i = 0; i < count - 1; i++) {
+            long t = time.applyAsLong(i);
+            long bucket = Math.min((long) ((t - firstTime) / bucketWidth), maxPoints - 2);
+            if (bucket != currentBucket) {
+                currentBucket = bucket;
+                times[points] = t;
+                values[points] = value.applyAsDouble(i);
+                points++;
+            } else {
+                values[points - 1] = Math.max(values[points - 1], value.applyAsDouble(i));
+            }
+        }
+        times[points] = time.applyAsLong(count - 1);
+        values[points] = value.applyAsDouble(count - 1);
+        points++;
 
-        String xs = f.incrementTimeSteps.stream().map(Object::toString).collect(Collectors.joining(", "));
-        String ys = f.incrementValues.stream().map(Object::toString).collect(Collectors.joining(", "));
-        xs += ", " + maxTime;
-        ys += ", " + f.getValue(maxTime);
+        writeList(out, "x", points, i -> Long.toString(times[i]));
+        writeList(out, "y", points, i -> Double.toString(values[i]));
+    }
 
-        System.out.println("# Actual traffic up to " + maxTime);
-        System.out.println("x = [" + xs + "]");
-        System.out.println("y = [" + ys + "]");
-        System.out.println("legend_entry_mt, = plt.step(x, y, where='post', label='Max Traffic')");
-        System.out.println();
+    private static void writeList(Writer out, String name, int count, IntFunction<String> element) throws IOException {
+        out.write(name + " = [");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) out.write(", ");
+            out.write(element.apply(i));
+        }
+        out.write("]\n");
     }
 
     @Override
@@ -0,0 +1,151 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.Arrays;
+
+/**
+ * The max-plus convolution <code>h(t) = max f(s) + g(t - s)</code> over <code>0 <= s < t</code> of two monotone step
+ * functions, e.g. the highest traffic of a prefix followed by a suffix of total length <code>t</code>.
+ * <p>
+ * As <code>f</code> is constant between its steps and <code>g</code> is monotone, only the steps of <code>f</code> (and
+ * the origin) need to be considered for <code>s</code>. They are searched as an implicit segment tree: for the steps
+ * <code>a..b</code>, <code>f(s_b) + g(t - s_a)</code> bounds <code>h(t)</code> from above and
+ * <code>s_a + first time g exceeds v - f(s_b)</code> bounds the first time <code>h</code> exceeds <code>v</code> from
+ * below. Subtrees whose bound can not improve the best step found so far are skipped, so walking along the steps of
+ * <code>h</code> usually only touches a logarithmic number of steps of <code>f</code> per step of <code>h</code>.
+ */
+class MaxPlusConvolution {
+    private final long[] times;
+    private final double[] values;
+    private final StepFunction g;
+    private final long horizon;
+
+    /**
+     * @param f       the function of the first part, valid up to at least <code>horizon</code>
+     * @param g       the function of the second part, valid up to at least <code>horizon</code>
+     * @param horizon the largest time the convolution is evaluated at
+     */
+    MaxPlusConvolution(StepFunction f, StepFunction g, long horizon) {
+        if (f.getValidUpTo() < horizon || g.getValidUpTo() < horizon) {
+            throw new IllegalArgumentException("Functions not defined to " + horizon);
+        }
+
+        // The origin and the steps of f before the horizon
+        int steps = f.indexAfter(horizon - 1);
+        boolean stepAtOrigin = steps > 0 && f.getTimeAt(0) == 0;
+        int offset = stepAtOrigin ? 0 : 1;
+        long[] times = new long[steps + offset];
+        double[] values = new double[steps + offset];
+        for (int i = 0; i < steps; i++) {
+            times[i + offset] = f.getTimeAt(i);
+            values[i + offset] = f.getValueAt(i);
+        }
+
+        this.times = times;
+        this.values = values;
+        this.g = g;
+        this.horizon = horizon;
+    }
+
+    /**
+     * The value of the convolution at <code>time</code>, 0 for times up to 0
+     */
+    double getValue(long time) {
+        if (time > horizon) {
+            throw new IllegalArgumentException("Convolution not defined to " + time + " (valid up to " + horizon + ")");
+        }
+
+        int candidates = candidatesBefore(time);
+        if (candidates == 0) {
+            return 0;
+        }
+
+        double[] best = {Double.NEGATIVE_INFINITY};
+        searchMaximum(0, candidates - 1, upperBound(0, candidates - 1, time), time, best);
+        return best[0];
+    }
+
+    /**
+     * The first time at which the convolution (strictly) exceeds <code>value</code>, or <code>Long.MAX_VALUE</code> if
+     * it does not up to the horizon
+     */
+    long firstTimeExceeding(double value) {
+        long[] best = {Long.MAX_VALUE};
+        searchMinimum(0, times.length - 1, lowerBound(0, times.length - 1, value), value, best);
+        return best[0] <= horizon ? best[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * The number of candidate steps of f strictly before <code>time</code>
+     */
+    private int candidatesBefore(long time) {
+        int idx = Arrays.binarySearch(times, time);
+        return idx >= 0 ? idx : -(idx + 1);
+    }
+
+    private double upperBound(int from, int to, long time) {
+        return values[to] + g.getValue(time - times[from]);
+    }
+
+    private void searchMaximum(int from, int to, double bound, long time, double[] best) {
+        if (bound <= best[0]) {
+            return;
+        }
+        if (from == to) {
+            best[0] = bound;
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        double left = upperBound(from, mid, time);
+        double right = upperBound(mid + 1, to, time);
+        // Later steps of f usually contribute more, so try them first
+        if (right >= left) {
+            searchMaximum(mid + 1, to, right, time, best);
+            searchMaximum(from, mid, left, time, best);
+        } else {
+            searchMaximum(from, mid, left, time, best);
+            searchMaximum(mid + 1, to, right, time, best);
+        }
+    }
+
+    private long lowerBound(int from, int to, double value) {
+        long remaining = firstTimeGExceeds(value - values[to]);
+        // The second part is never empty
+        return remaining == Long.MAX_VALUE ? Long.MAX_VALUE : times[from] + Math.max(remaining, 1);
+    }
+
+    private void searchMinimum(int from, int to, long bound, double value, long[] best) {
+        if (bound >= best[0]) {
+            return;
+        }
+        if (from == to) {
+            best[0] = bound;
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        long left = lowerBound(from, mid, value);
+        long right = lowerBound(mid + 1, to, value);
+        if (left <= right) {
+            searchMinimum(from, mid, left, value, best);
+            searchMinimum(mid + 1, to, right, value, best);
+        } else {
+            searchMinimum(mid + 1, to, right, value, best);
+            searchMinimum(from, mid, left, value, best);
+        }
+    }
+
+    /**
+     * The first time at which g exceeds <code>value</code>, or <code>Long.MAX_VALUE</code> if it does not where it is
+     * defined
+     */
+    private long firstTimeGExceeds(double value) {
+        if (value < g.getValue(0)) {
+            return 0;
+        }
+        if (g.getNumSteps() == 0 || value >= g.maximumValue()) {
+            return Long.MAX_VALUE;
+        }
+        return g.firstTimeExceeding(value);
+    }
+}
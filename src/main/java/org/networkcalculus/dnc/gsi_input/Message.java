@@ -1,5 +1,7 @@
 package org.networkcalculus.dnc.gsi_input;
 
+import java.util.Objects;
+
 /**
  * @author Malte Schütze
  */
@@ -31,4 +33,20 @@ public class Message {
     public long getOffset() {
         return offset;
     }
+
+    /**
+     * Blocks create messages on demand, so two messages are equal if they describe the same message of the same block
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Message)) return false;
+        Message other = (Message) o;
+        return offset == other.offset && size == other.size && block == other.block && Objects.equals(label, other.label);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(label, block, offset, size);
+    }
 }
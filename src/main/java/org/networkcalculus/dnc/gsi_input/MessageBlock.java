@@ -0,0 +1,63 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A block that stores its own messages, such as the blocks of a parsed graph. Messages are stored column-wise, the hot
+ * loops only need offsets and sizes.
+ */
+public class MessageBlock extends Block {
+    private int numMessages;
+    private long[] offsets = new long[4];
+    private int[] sizes = new int[4];
+    private int[] labels = new int[4];
+
+    public MessageBlock(String label, long period) {
+        this(Label.of(label), period);
+    }
+
+    public MessageBlock(Label label, long period) {
+        super(label, period);
+    }
+
+    public void addMessage(Message message) {
+        checkNotFrozen();
+        if (message.getOffset() < 0 || message.getOffset() >= getPeriod()) {
+            throw new IllegalArgumentException("Message offset invalid (below zero or exceeding period): " + getLabel() + "/" + message.getLabel());
+        }
+        if (numMessages == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * numMessages);
+            sizes = Arrays.copyOf(sizes, 2 * numMessages);
+            labels = Arrays.copyOf(labels, 2 * numMessages);
+        }
+        offsets[numMessages] = message.getOffset();
+        sizes[numMessages] = message.getSize();
+        labels[numMessages] = getCompactLabel().intern(message.getLabel());
+        numMessages++;
+        appendInBlockTraffic(message.getOffset(), message.getSize());
+    }
+
+    @Override
+    public int getNumMessages() {
+        return numMessages;
+    }
+
+    @Override
+    String getMessageLabel(int idx) {
+        Objects.checkIndex(idx, numMessages);
+        return getCompactLabel().symbol(labels[idx]);
+    }
+
+    @Override
+    long getMessageOffset(int idx) {
+        Objects.checkIndex(idx, numMessages);
+        return offsets[idx];
+    }
+
+    @Override
+    int getMessageSize(int idx) {
+        Objects.checkIndex(idx, numMessages);
+        return sizes[idx];
+    }
+}
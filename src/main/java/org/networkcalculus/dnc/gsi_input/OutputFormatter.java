@@ -1,12 +1,20 @@
 package org.networkcalculus.dnc.gsi_input;
 
-import org.networkcalculus.dnc.curves.ArrivalCurve;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * @author Malte Schütze
  */
 public interface OutputFormatter {
-    void printPseudoperiodicFunction(ProtocolGraph graph, PseudoPeriodicFunction f, long time);
-    void printArrivalCurve(ArrivalCurve curve, long time);
-    void printMaxTraffic(ProtocolGraph graph, long time);
+    void printPseudoperiodicFunction(AnalysisResult result, OutputStream out) throws IOException;
+    void printArrivalCurve(AnalysisResult result, OutputStream out) throws IOException;
+    void printMaxTraffic(AnalysisResult result, OutputStream out) throws IOException;
+
+    /**
+     * Whether the output is meant to be read by a program, and so can not share stdout with the status messages
+     */
+    default boolean isMachineReadable() {
+        return false;
+    }
 }
@@ -2,26 +2,61 @@ package org.networkcalculus.dnc.gsi_input;
 
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 /**
  * @author Malte Schütze
  */
 public class ProtocolGraph {
+    // More chunks than threads, so that threads finishing sparse chunks early can take over the remaining work
+    private static final int CHUNKS_PER_THREAD = 8;
+    // Most times sampled from the periodic part of a component bound, see approximateByComponent
+    private static final int MAX_TAIL_STEPS = 1 << 16;
 
-    private HashMap<String, Block> blocks = new HashMap<>();
+    private HashMap<Label, Block> blocks = new HashMap<>();
     Args args;
 
+    // Upper envelopes of the max prefix/suffix functions of all blocks, extended lazily as queries require. They are
+    // cleared in place when blocks are added or removed, so cursors over them stay valid.
+    private final StepFunction prefixEnvelope = new StepFunction();
+    private final StepFunction suffixEnvelope = new StepFunction();
+
     public ProtocolGraph(Args args) {
         this.args = args;
     }
 
     public void addBlock(Block block) {
-        blocks.put(block.getLabel(), block);
+        blocks.put(block.getCompactLabel(), block);
+        prefixEnvelope.clear();
+        suffixEnvelope.clear();
+    }
+
+    public void removeBlock(Block block) {
+        for (Block previous : new ArrayList<>(block.getPreviousBlocks())) {
+            previous.removeNext(block);
+        }
+        for (Block next : new ArrayList<>(block.getNextBlocks())) {
+            block.removeNext(next);
+        }
+
+        blocks.remove(block.getCompactLabel());
+        prefixEnvelope.clear();
+        suffixEnvelope.clear();
     }
 
     public Block getBlock(String label) {
-        Block block = blocks.get(label);
+        Label key = Label.find(label);
+        Block block = key == null ? null : blocks.get(key);
         if (block == null) throw new IllegalArgumentException("No block labeled " + label);
         return block;
     }
@@ -83,57 +118,1017 @@ public class ProtocolGraph {
     }
 
     public long firstTimeExceedingInPrefix(double value) {
-        return blocks.values().stream()
-                .mapToLong(b -> b.getEarliestTimeMaxPrefixExceeds(value))
-                .min()
-                .getAsLong();
+        return firstTimeExceedingInPrefix(value, prefixCursor());
+    }
+
+    /**
+     * Same as {@link #firstTimeExceedingInPrefix(double)}, searching the envelope with a cursor from
+     * {@link #prefixCursor()}
+     */
+    long firstTimeExceedingInPrefix(double value, StepFunction.Cursor cursor) {
+        if (prefixEnvelope.getIncrementValues().isEmpty() || value >= prefixEnvelope.maximumValue()) {
+            long time = blocks.values().stream()
+                    .mapToLong(b -> b.getEarliestTimeMaxPrefixExceeds(value))
+                    .min()
+                    .getAsLong();
+            extendEnvelope(prefixEnvelope, time, Side.PREFIX);
+        }
+        return cursor.firstTimeExceeding(value);
     }
 
     public long firstTimeExceedingInSuffix(double value) {
-        return blocks.values().stream()
-                .mapToLong(b -> b.getEarliestTimeMaxSuffixExceeds(value))
-                .min()
-                .getAsLong();
+        return firstTimeExceedingInSuffix(value, suffixCursor());
+    }
+
+    /**
+     * Same as {@link #firstTimeExceedingInSuffix(double)}, searching the envelope with a cursor from
+     * {@link #suffixCursor()}
+     */
+    long firstTimeExceedingInSuffix(double value, StepFunction.Cursor cursor) {
+        if (suffixEnvelope.getIncrementValues().isEmpty() || value >= suffixEnvelope.maximumValue()) {
+            long time = blocks.values().stream()
+                    .mapToLong(b -> b.getEarliestTimeMaxSuffixExceeds(value))
+                    .min()
+                    .getAsLong();
+            extendEnvelope(suffixEnvelope, time, Side.SUFFIX);
+        }
+        return cursor.firstTimeExceeding(value);
     }
 
     public double maxPrefix(long time) {
-        return blocks.values().stream()
-                .mapToDouble(b -> b.maxPrefix(time))
-                .max()
-                .orElse(0);
+        return maxPrefix(time, prefixCursor());
+    }
+
+    /**
+     * Same as {@link #maxPrefix(long)}, looking the value up with a cursor from {@link #prefixCursor()}
+     */
+    double maxPrefix(long time, StepFunction.Cursor cursor) {
+        if (blocks.isEmpty()) {
+            return 0;
+        }
+        if (time > prefixEnvelope.getValidUpTo()) {
+            extendEnvelope(prefixEnvelope, time, Side.PREFIX);
+        }
+        return cursor.getValue(time);
     }
 
     public double maxSuffix(long time) {
-        return blocks.values().stream()
-                .mapToDouble(b -> b.maxSuffix(time))
-                .max()
-                .orElse(0);
+        return maxSuffix(time, suffixCursor());
+    }
+
+    /**
+     * Same as {@link #maxSuffix(long)}, looking the value up with a cursor from {@link #suffixCursor()}
+     */
+    double maxSuffix(long time, StepFunction.Cursor cursor) {
+        if (blocks.isEmpty()) {
+            return 0;
+        }
+        if (time > suffixEnvelope.getValidUpTo()) {
+            extendEnvelope(suffixEnvelope, time, Side.SUFFIX);
+        }
+        return cursor.getValue(time);
+    }
+
+    /**
+     * The upper envelope of the max prefix functions of all blocks, extended up to at least <code>time</code>
+     */
+    StepFunction prefixEnvelope(long time) {
+        maxPrefix(time);
+        return prefixEnvelope;
+    }
+
+    /**
+     * Same as {@link #prefixEnvelope(long)} for the max suffix functions
+     */
+    StepFunction suffixEnvelope(long time) {
+        maxSuffix(time);
+        return suffixEnvelope;
+    }
+
+    /**
+     * A cursor over the upper envelope of the max prefix functions of all blocks, for sweeps over increasing times or
+     * values with {@link #maxPrefix(long, StepFunction.Cursor)} and
+     * {@link #firstTimeExceedingInPrefix(double, StepFunction.Cursor)}
+     */
+    StepFunction.Cursor prefixCursor() {
+        return prefixEnvelope.cursor();
+    }
+
+    /**
+     * Same as {@link #prefixCursor()} for the max suffix functions
+     */
+    StepFunction.Cursor suffixCursor() {
+        return suffixEnvelope.cursor();
+    }
+
+    /**
+     * The max prefix or the max suffix functions of the blocks
+     */
+    private enum Side {
+        PREFIX {
+            @Override
+            StepFunction function(Block block) {
+                return block.getMaxPrefixFunction();
+            }
+
+            @Override
+            void precalculate(Block block, long time) {
+                block.precalculateMaxPrefix(time);
+            }
+
+            @Override
+            void setPeriodic(Block block, long begin, long length, double increment) {
+                block.setMaxPrefixPeriodic(begin, length, increment);
+            }
+        },
+        SUFFIX {
+            @Override
+            StepFunction function(Block block) {
+                return block.getMaxSuffixFunction();
+            }
+
+            @Override
+            void precalculate(Block block, long time) {
+                block.precalculateMaxSuffix(time);
+            }
+
+            @Override
+            void setPeriodic(Block block, long begin, long length, double increment) {
+                block.setMaxSuffixPeriodic(begin, length, increment);
+            }
+        };
+
+        abstract StepFunction function(Block block);
+
+        abstract void precalculate(Block block, long time);
+
+        abstract void setPeriodic(Block block, long begin, long length, double increment);
+    }
+
+    /**
+     * Extend the upper envelope of the prefix or suffix functions of all blocks so that it is valid up to at least
+     * <code>time</code>. As every block function is monotonic, the envelope is the running maximum over the steps
+     * of all blocks, taken in time order. Periodic block functions are iterated without storing their repetitions, and
+     * once all of them repeat in the same way, so does the envelope, which then only keeps its first period as well.
+     * <p>
+     * The envelope would not notice new messages or edges of the blocks, so they are frozen (see {@link Block#freeze()}).
+     *
+     * @param envelope the envelope to extend
+     * @param time     the time up to which the envelope must be valid
+     * @param side     the functions the envelope covers
+     */
+    private void extendEnvelope(StepFunction envelope, long time, Side side) {
+        boolean empty = envelope.getIncrementValues().isEmpty();
+        long validFrom = empty ? Long.MIN_VALUE : envelope.getValidUpTo();
+        for (Block block : blocks.values()) {
+            block.freeze();
+            side.precalculate(block, time);
+        }
+        compressIfPeriodic(side, validFrom, time);
+
+        long validUpTo = Long.MAX_VALUE;
+        StepFunction period = null;
+        long periodBegin = 0;
+        boolean periodic = !blocks.isEmpty();
+        for (Block block : blocks.values()) {
+            StepFunction f = side.function(block);
+            if (f.isPeriodic()) {
+                validUpTo = Math.min(validUpTo, time);
+                period = f;
+                periodBegin = Math.max(periodBegin, f.getPeriodBegin());
+            } else {
+                validUpTo = Math.min(validUpTo, f.getStoredUpTo());
+                periodic = false;
+            }
+        }
+        for (Block block : blocks.values()) {
+            periodic = periodic && side.function(block).repeatsFrom(periodBegin, period.getPeriodLength(), period.getPeriodIncrement());
+        }
+        if (periodic) {
+            // The envelope needs its whole first period before it can repeat
+            validUpTo = Math.max(validUpTo, periodBegin + period.getPeriodLength());
+        }
+
+        // Steps of each block in (validFrom, validUpTo], as index ranges into its function
+        List<StepFunction> functions = new ArrayList<>(blocks.size());
+        int[] from = new int[blocks.size()];
+        int[] to = new int[blocks.size()];
+        for (Block block : blocks.values()) {
+            StepFunction f = side.function(block);
+            int i = functions.size();
+            functions.add(f);
+            from[i] = f.indexAfter(validFrom);
+            to[i] = f.indexAfter(validUpTo);
+        }
+
+        double value = new SortedRuns(functions.size()) {
+            @Override
+            int size(int run) {
+                return to[run] - from[run];
+            }
+
+            @Override
+            long getTime(int run, int idx) {
+                return functions.get(run).getTimeAt(from[run] + idx);
+            }
+
+            @Override
+            double getValue(int run, int idx) {
+                return functions.get(run).getValueAt(from[run] + idx);
+            }
+        }.appendMaximum(envelope, empty ? 0 : envelope.maximumValue());
+        envelope.setValueAt(validUpTo, value);
+        if (periodic) {
+            envelope.setPeriodic(periodBegin, period.getPeriodLength(), period.getPeriodIncrement());
+        }
+    }
+
+    /**
+     * Replace the functions of all blocks on <code>side</code> by their periodic continuation if they provably repeat
+     * with the maximum ratio cycle (see {@link #isPeriodicFrom(Side, long, long, double)}). This is checked once per
+     * checkpoint in <code>(from, to]</code>, at the largest one. The checkpoints double from twice the longest block,
+     * and periodicity is checked from half the checkpoint, so the functions are extended at most about twice as far as
+     * necessary before they stop growing.
+     */
+    private void compressIfPeriodic(Side side, long from, long to) {
+        long memory = longestBlockLength();
+        long checkpoint = 2 * (memory + 1);
+        if (checkpoint > to) {
+            return;
+        }
+        while (checkpoint <= to / 2) {
+            checkpoint *= 2;
+        }
+        if (checkpoint <= from) {
+            return;
+        }
+
+        CycleRatio cycle = maximumCycleRatio();
+        long length = cycle.getCycleLength();
+        long begin = checkpoint / 2;
+        if (length == 0 || length > begin || !isPeriodicFrom(side, begin, length, cycle.getCycleTraffic())) {
+            return;
+        }
+        if (args.verbose) System.out.println("[1] Max " + side.name().toLowerCase() + " functions periodic from " + begin + " with length " + length);
+        setPeriodic(side, begin, length, cycle.getCycleTraffic());
+    }
+
+    /**
+     * Declare the functions of all blocks on <code>side</code> periodic that are not yet, see
+     * {@link StepFunction#setPeriodic(long, long, double)}. Only their first period is kept from then on.
+     */
+    private void setPeriodic(Side side, long begin, long length, double traffic) {
+        for (Block block : blocks.values()) {
+            if (!side.function(block).isPeriodic()) {
+                side.setPeriodic(block, begin, length, traffic);
+            }
+        }
     }
 
     public PseudoPeriodicFunction approximateSubadditive(long k) {
+        return approximateSubadditive(k, args.threads);
+    }
+
+    /**
+     * Same as {@link #approximateSubadditive(long)}, tracing the max traffic on <code>threads</code> threads. The
+     * result is identical to the sequential one. If periodicity detection is enabled, a single thread is used.
+     */
+    public PseudoPeriodicFunction approximateSubadditive(long k, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads " + threads);
+        }
+        if (args.detectPeriod) {
+            return traceUntilPeriodic(k);
+        }
+
         PseudoPeriodicFunction result = new PseudoPeriodicFunction(0, k, maxTraffic(k));
+        if (threads == 1) {
+            traceMaxTraffic(k, args.verbose, result::setValueAt);
+        } else {
+            traceMaxTrafficInParallel(k, threads, args.verbose, result::setValueAt);
+        }
+        return result;
+    }
+
+    /**
+     * Trace the max traffic like {@link #traceMaxTraffic(long, boolean, BiConsumer)}, but stop as soon as it provably
+     * repeats with the length and traffic of the maximum ratio cycle (see {@link #isPeriodicFrom(Side, long, long, double)}).
+     * Periodicity is checked at checkpoints whose distance from the end of the longest block doubles, starting one
+     * cycle length after it, so the trace runs at most about twice as long as necessary. If the max traffic does not become periodic before <code>k</code>, this is the subadditive
+     * approximation with threshold <code>k</code>.
+     */
+    private PseudoPeriodicFunction traceUntilPeriodic(long k) {
         if (maxTraffic(0) != 0) {
             throw new IllegalStateException("Interval 0 should always return maxtraffic 0");
         }
 
-        result.setValueAt(0, 0);
+        CycleRatio cycle = maximumCycleRatio();
+        long length = cycle.getCycleLength();
+        // The earliest checkpoint at which isPeriodicFrom can prove periodicity is one period after the end of the
+        // longest block, the later ones are at twice the distance from there each
+        long earliest = longestBlockLength() + 1;
+        long distance = length;
+        long checkpoint = length == 0 ? Long.MAX_VALUE : earliest + distance;
+
+        StepFunction trace = new StepFunction();
+        trace.setValueAt(0, 0);
         long nextStep = firstTimeExceeding(0);
-        while (nextStep <= k) {
+        while (true) {
+            // The max traffic is known up to nextStep - 1
+            while (checkpoint < Math.min(nextStep, k + 1)) {
+                long begin = checkpoint - length;
+                if (isPeriodicFrom(Side.PREFIX, begin - 1, length, cycle.getCycleTraffic())) {
+                    if (args.verbose) System.out.println("[1] Periodic from " + begin + " with length " + length);
+                    // The max prefix functions need no further extension, only their first period is kept
+                    setPeriodic(Side.PREFIX, begin - 1, length, cycle.getCycleTraffic());
+                    PseudoPeriodicFunction result = new PseudoPeriodicFunction(begin, length, cycle.getCycleTraffic());
+                    for (int i = 0; i < trace.getNumSteps(); i++) {
+                        result.setValueAt(trace.getTimeAt(i), trace.getValueAt(i));
+                    }
+                    result.setValueAt(checkpoint, trace.maximumValue());
+                    return result;
+                }
+                distance = distance > Long.MAX_VALUE / 4 ? Long.MAX_VALUE / 2 : 2 * distance;
+                checkpoint = earliest + distance;
+            }
+
+            if (nextStep > k) {
+                break;
+            }
             if (args.verbose) System.out.println("[1] " + nextStep + "/" + k);
             double nextValue = maxTraffic(nextStep);
-            result.setValueAt(nextStep, nextValue);
+            trace.setValueAt(nextStep, nextValue);
             nextStep = firstTimeExceeding(nextValue);
         }
 
+        PseudoPeriodicFunction result = new PseudoPeriodicFunction(0, k, maxTraffic(k));
+        for (int i = 0; i < trace.getNumSteps(); i++) {
+            result.setValueAt(trace.getTimeAt(i), trace.getValueAt(i));
+        }
         result.setValueAt(k, maxTraffic(k));
+        return result;
+    }
+
+    /**
+     * Check whether the functions of all blocks on <code>side</code> increase by <code>traffic</code> every
+     * <code>length</code> from <code>time</code> on. Beyond the end of a block, its max prefix function is defined by
+     * the functions of its successors at most the longest period earlier, and its max suffix function by those of its
+     * predecessors, so by induction this holds forever once it holds on an interval of that length. For the prefix
+     * functions, the max traffic of the graph then repeats in the same way for all intervals longer than
+     * <code>time</code>. Functions already known to be periodic are accepted if they repeat in the same way.
+     *
+     * @param time a time after the end of every block
+     */
+    private boolean isPeriodicFrom(Side side, long time, long length, double traffic) {
+        long memory = longestBlockLength();
+        for (Block block : blocks.values()) {
+            StepFunction f = side.function(block);
+            if (f.isPeriodic()) {
+                if (!f.repeatsFrom(time, length, traffic)) {
+                    return false;
+                }
+                continue;
+            }
+
+            side.precalculate(block, time + memory + length);
+            if (f.getValue(time + length) != f.getValue(time) + traffic) {
+                return false;
+            }
+
+            // The steps in (time, time + memory) must reappear shifted by length, and no others
+            int i = f.indexAfter(time);
+            int j = f.indexAfter(time + length);
+            for (; i < f.getNumSteps() && f.getTimeAt(i) < time + memory; i++, j++) {
+                if (j >= f.getNumSteps() || f.getTimeAt(j) != f.getTimeAt(i) + length || f.getValueAt(j) != f.getValueAt(i) + traffic) {
+                    return false;
+                }
+            }
+            if (j < f.getNumSteps() && f.getTimeAt(j) < time + memory + length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The cycle of blocks with the highest long-term traffic rate, see {@link CycleRatio}
+     */
+    public CycleRatio maximumCycleRatio() {
+        return new CycleRatio(blocks.values());
+    }
+
+    /**
+     * Approximate the max traffic exactly up to <code>horizon</code> and by the line <code>rate * t + burst</code> of
+     * the maximum cycle ratio after that. Unlike the fully-connected models, this needs no super-blocks to reach the
+     * exact long-term rate.
+     *
+     * @param horizon the length up to which the max traffic is calculated exactly
+     */
+    public PseudoPeriodicFunction approximateCycleRatio(long horizon) {
+        CycleRatio cycle = maximumCycleRatio();
+        if (args.verbose) System.out.println("[1] Maximum cycle ratio " + cycle.getRate() + " over " + cycle.getCycle().size() + " blocks");
+
+        // A period of length 1 continues the function linearly from the horizon
+        PseudoPeriodicFunction result = new PseudoPeriodicFunction(horizon, 1, cycle.getRate());
+        traceMaxTraffic(horizon, args.verbose, result::setValueAt);
+        result.setValueAt(horizon, Math.max(maxTraffic(horizon), cycle.getRate() * horizon + cycle.getBurst()));
+        return result;
+    }
+
+    /**
+     * Calculate the max traffic in intervals of every length up to <code>horizon</code>, without any approximation
+     *
+     * @param horizon the longest interval to consider
+     * @return a function valid up to <code>horizon</code>
+     */
+    public StepFunction maxTrafficFunction(long horizon) {
+        StepFunction result = new StepFunction();
+        traceMaxTraffic(horizon, false, result::setValueAt);
+        return result;
+    }
+
+    private void traceMaxTraffic(long horizon, boolean verbose, BiConsumer<Long, Double> step) {
+        if (maxTraffic(0) != 0) {
+            throw new IllegalStateException("Interval 0 should always return maxtraffic 0");
+        }
+
+        step.accept(0L, 0.);
+        long nextStep = firstTimeExceeding(0);
+        while (nextStep <= horizon) {
+            if (verbose) System.out.println("[1] " + nextStep + "/" + horizon);
+            double nextValue = maxTraffic(nextStep);
+            step.accept(nextStep, nextValue);
+            nextStep = firstTimeExceeding(nextValue);
+        }
+
+        step.accept(horizon, maxTraffic(horizon));
+    }
+
+    /**
+     * Parallel version of {@link #traceMaxTraffic(long, boolean, BiConsumer)}. The time range is split into chunks
+     * which are traced independently, each starting from the max traffic at its beginning, and then stitched together
+     * in order. As the next step after any time only depends on the max traffic at that time, every chunk finds
+     * exactly the steps the sequential trace finds in its range.
+     */
+    private void traceMaxTrafficInParallel(long horizon, int threads, boolean verbose, BiConsumer<Long, Double> step) {
+        if (maxTraffic(0) != 0) {
+            throw new IllegalStateException("Interval 0 should always return maxtraffic 0");
+        }
+
+        // Block functions are extended lazily and are not thread-safe, so extend them far enough for every query of
+        // the workers beforehand. Afterwards, the workers only read them. The trace never reads the suffix functions.
+        precalculate(horizon, threads, false);
+        firstTimeExceeding(maxTraffic(horizon));
+
+        int chunks = threads * CHUNKS_PER_THREAD;
+        long width = Math.max(1, (horizon + chunks - 1) / chunks);
+        List<Callable<StepFunction>> tasks = new ArrayList<>();
+        for (long from = 0; from < horizon; from += width) {
+            long chunkFrom = from;
+            long chunkTo = Math.min(horizon, from + width);
+            tasks.add(() -> traceChunk(chunkFrom, chunkTo));
+        }
+        if (verbose) System.out.println("[1] Tracing " + tasks.size() + " chunks on " + threads + " threads");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            step.accept(0L, 0.);
+            for (Future<StepFunction> future : pool.invokeAll(tasks)) {
+                StepFunction chunk = future.get();
+                // The first entry is the value at the beginning of the chunk, which is not a step
+                for (int i = 1; i < chunk.getNumSteps(); i++) {
+                    step.accept(chunk.getTimeAt(i), chunk.getValueAt(i));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while tracing max traffic", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        step.accept(horizon, maxTraffic(horizon));
+    }
+
+    /**
+     * Extend the max prefix and suffix functions of all blocks up to <code>horizon</code> past their end on
+     * <code>threads</code> threads, so that later queries up to that horizon are lookups.
+     * <p>
+     * The prefix functions of a block depend on those of its successors, so the strongly connected components of the
+     * graph are processed after all components they lead to. The blocks of one component depend on each other and are
+     * extended together by one thread; independent components run in parallel. Suffix functions are processed in the
+     * opposite order.
+     */
+    public void precalculate(long horizon, int threads) {
+        precalculate(horizon, threads, true);
+    }
+
+    /**
+     * Same as {@link #precalculate(long, int)}, leaving out the suffix functions unless <code>suffixes</code> is set
+     */
+    void precalculate(long horizon, int threads, boolean suffixes) {
+        List<List<Block>> components = stronglyConnectedComponents();
+        for (List<Block> component : components) {
+            Object prefixLock = new Object();
+            Object suffixLock = new Object();
+            for (Block block : component) {
+                block.setLocks(prefixLock, suffixLock);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            runAfterDependencies(pool, components, Block::getNextBlocks,
+                    block -> block.precalculateMaxPrefix(block.getPeriod() + horizon));
+            if (suffixes) {
+                List<List<Block>> reversed = new ArrayList<>(components);
+                Collections.reverse(reversed);
+                runAfterDependencies(pool, reversed, Block::getPreviousBlocks,
+                        block -> block.precalculateMaxSuffix(block.getPeriod() + horizon));
+            }
+        } finally {
+            pool.shutdown();
+            for (List<Block> component : components) {
+                for (Block block : component) {
+                    block.setLocks(null, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run <code>task</code> on every block, component by component. A component is started once the components of all
+     * dependencies of its blocks are done, which requires them to appear earlier in <code>components</code>.
+     */
+    private static void runAfterDependencies(ForkJoinPool pool, List<List<Block>> components,
+                                             Function<Block, Set<Block>> dependencies, Consumer<Block> task) {
+        Map<Block, CompletableFuture<Void>> done = new HashMap<>();
+        List<CompletableFuture<Void>> all = new ArrayList<>(components.size());
+        for (List<Block> component : components) {
+            List<CompletableFuture<Void>> before = new ArrayList<>();
+            for (Block block : component) {
+                for (Block dependency : dependencies.apply(block)) {
+                    CompletableFuture<Void> future = done.get(dependency);
+                    if (future != null) before.add(future);
+                }
+            }
+
+            CompletableFuture<Void> future = CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+                    .thenRunAsync(() -> component.forEach(task), pool);
+            for (Block block : component) {
+                done.put(block, future);
+            }
+            all.add(future);
+        }
+
+        try {
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Find the strongly connected components of the graph with Tarjan's algorithm.
+     *
+     * @return the components, every component after all components reachable from it
+     */
+    List<List<Block>> stronglyConnectedComponents() {
+        Map<Block, Integer> index = new HashMap<>();
+        Map<Block, Integer> lowLink = new HashMap<>();
+        Deque<Block> stack = new ArrayDeque<>();
+        Set<Block> onStack = new HashSet<>();
+        List<List<Block>> components = new ArrayList<>();
+
+        for (Block root : blocks.values()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+
+            // Explicit recursion stack, graphs can be deep
+            Deque<Block> path = new ArrayDeque<>();
+            Deque<Iterator<Block>> successors = new ArrayDeque<>();
+            index.put(root, index.size());
+            lowLink.put(root, index.get(root));
+            stack.push(root);
+            onStack.add(root);
+            path.push(root);
+            successors.push(root.getNextBlocks().iterator());
+
+            while (!path.isEmpty()) {
+                Block block = path.peek();
+                Iterator<Block> next = successors.peek();
+                if (next.hasNext()) {
+                    Block successor = next.next();
+                    if (!index.containsKey(successor)) {
+                        index.put(successor, index.size());
+                        lowLink.put(successor, index.get(successor));
+                        stack.push(successor);
+                        onStack.add(successor);
+                        path.push(successor);
+                        successors.push(successor.getNextBlocks().iterator());
+                    } else if (onStack.contains(successor)) {
+                        lowLink.put(block, Math.min(lowLink.get(block), index.get(successor)));
+                    }
+                    continue;
+                }
+
+                path.pop();
+                successors.pop();
+                if (!path.isEmpty()) {
+                    Block parent = path.peek();
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(block)));
+                }
+                if (lowLink.get(block).equals(index.get(block))) {
+                    List<Block> component = new ArrayList<>();
+                    Block member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (member != block);
+                    components.add(component);
+                }
+            }
+        }
+
+        return components;
+    }
+
+    /**
+     * Approximate the max traffic by analysing every strongly connected component of the graph on its own and
+     * combining the results. A path passes through a chain of components in the order of the component DAG and never
+     * returns to a component, and the part of an interval that lies inside a component is an interval of a path of that
+     * component. The traffic in an interval of length <code>t</code> is therefore bounded by the largest sum of the
+     * component bounds at <code>t</code> along any chain, which is exact for disjoint components. The combined bound is
+     * sampled up to <code>k</code> and repeated after that like in {@link #approximateSubadditive(long)}, which is valid
+     * because the actual max traffic is subadditive.
+     *
+     * @param k         the length up to which the combined bound is sampled
+     * @param threads   the number of components analysed at the same time
+     * @param heuristic approximates the max traffic of a component, given as a graph of its own. Components without a
+     *                  cycle consist of a single block and are bounded by the traffic inside that block instead
+     */
+    public PseudoPeriodicFunction approximateByComponent(long k, int threads, Function<ProtocolGraph, PseudoPeriodicFunction> heuristic) {
+        List<List<Block>> components = stronglyConnectedComponents();
+        Map<Block, Integer> componentOf = new HashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            for (Block block : components.get(i)) {
+                componentOf.put(block, i);
+            }
+        }
+
+        // Successors always come before their predecessors in the list of components
+        List<Set<Integer>> successors = new ArrayList<>(components.size());
+        for (List<Block> component : components) {
+            Set<Integer> next = new HashSet<>();
+            for (Block block : component) {
+                for (Block nextBlock : block.getNextBlocks()) {
+                    next.add(componentOf.get(nextBlock));
+                }
+            }
+            next.remove(componentOf.get(component.get(0)));
+            successors.add(next);
+        }
+
+        // Every component is analysed on a copy, so that no lazily extended function is shared between threads
+        List<Callable<PseudoPeriodicFunction>> tasks = new ArrayList<>(components.size());
+        for (List<Block> component : components) {
+            ProtocolGraph subgraph = subgraph(component);
+            Block first = component.get(0);
+            if (component.size() == 1 && !first.getNextBlocks().contains(first)) {
+                tasks.add(() -> trafficInside(subgraph.getBlocks().iterator().next()));
+            } else {
+                tasks.add(() -> heuristic.apply(subgraph));
+            }
+        }
+        if (args.verbose) System.out.println("[1] Analysing " + components.size() + " components on " + threads + " threads");
+
+        List<PseudoPeriodicFunction> bounds = new ArrayList<>(components.size());
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<PseudoPeriodicFunction> future : pool.invokeAll(tasks)) {
+                bounds.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while analysing components", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        LongStream.Builder candidates = LongStream.builder();
+        for (PseudoPeriodicFunction bound : bounds) {
+            addStepTimes(bound, k, candidates);
+        }
+        candidates.add(k);
+        long[] times = candidates.build().filter(time -> time >= 0 && time <= k).toArray();
+        TimeIndex index = new TimeIndex(times, times.length);
+
+        // The bound at a candidate holds up to the previous candidate, which is exact if all steps are candidates
+        PseudoPeriodicFunction result = new PseudoPeriodicFunction(0, k, chainBound(bounds, successors, k));
+        long previous = 0;
+        result.setValueAt(0, chainBound(bounds, successors, 0));
+        for (int i = 0; i < index.size(); i++) {
+            long time = index.getTime(i);
+            if (time > 0) {
+                result.setValueAt(previous + 1, chainBound(bounds, successors, time));
+                previous = time;
+            }
+        }
+        result.setValueAt(k, chainBound(bounds, successors, k));
+        return result;
+    }
+
+    /**
+     * The largest sum of the bounds of the components along any chain of the component DAG at <code>time</code>
+     */
+    private static double chainBound(List<PseudoPeriodicFunction> bounds, List<Set<Integer>> successors, long time) {
+        double[] best = new double[bounds.size()];
+        double max = 0;
+        for (int i = 0; i < bounds.size(); i++) {
+            double next = 0;
+            for (int successor : successors.get(i)) {
+                next = Math.max(next, best[successor]);
+            }
+            best[i] = bounds.get(i).getValue(time) + next;
+            max = Math.max(max, best[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Add the times up to <code>upTo</code> at which <code>f</code> may change, each together with the time before it.
+     * Repetitions of the periodic part that would add more than {@link #MAX_TAIL_STEPS} times are sampled on an even
+     * grid instead.
+     */
+    private static void addStepTimes(PseudoPeriodicFunction f, long upTo, LongStream.Builder times) {
+        long periodEnd = f.periodBegin + f.periodLength;
+        List<Long> periodSteps = new ArrayList<>();
+        for (long step : f.incrementTimeSteps) {
+            if (step > upTo || step >= periodEnd) {
+                break;
+            }
+            times.add(step - 1);
+            times.add(step);
+            if (step > f.periodBegin) {
+                periodSteps.add(step);
+            }
+        }
+        if (periodEnd > upTo || (f.periodIncrement == 0 && periodSteps.isEmpty())) {
+            return;
+        }
+
+        long repetitions = (upTo - f.periodBegin) / f.periodLength;
+        if (repetitions * (periodSteps.size() + 1) <= MAX_TAIL_STEPS) {
+            for (long offset = f.periodLength; offset <= upTo - f.periodBegin; offset += f.periodLength) {
+                times.add(f.periodBegin + offset - 1);
+                times.add(f.periodBegin + offset);
+                for (long step : periodSteps) {
+                    times.add(step + offset - 1);
+                    times.add(step + offset);
+                }
+            }
+        } else {
+            long spacing = (upTo - periodEnd + MAX_TAIL_STEPS - 1) / MAX_TAIL_STEPS;
+            for (long time = periodEnd; time <= upTo; time += spacing) {
+                times.add(time);
+            }
+        }
+    }
+
+    /**
+     * Bound the traffic of an acyclic component, which every path passes through at most once
+     */
+    private static PseudoPeriodicFunction trafficInside(Block block) {
+        StepFunction window = block.getMaxWindowFunction();
+        PseudoPeriodicFunction f = new PseudoPeriodicFunction(block.getPeriod(), 1, 0);
+        for (int i = 0; i < window.getNumSteps(); i++) {
+            f.setValueAt(window.getTimeAt(i), window.getValueAt(i));
+        }
+        f.setValueAt(block.getPeriod() + 1, block.totalTrafficInBlock());
+        return f;
+    }
+
+    /**
+     * Copy the given blocks and the edges between them into a graph of their own
+     */
+    ProtocolGraph subgraph(Collection<Block> members) {
+        Map<Block, Block> copies = new HashMap<>();
+        for (Block block : members) {
+            MessageBlock copy = new MessageBlock(block.getCompactLabel(), block.getPeriod());
+            for (Message msg : block) {
+                copy.addMessage(new Message(msg.getLabel(), copy, msg.getOffset(), msg.getSize()));
+            }
+            copies.put(block, copy);
+        }
+
+        ProtocolGraph result = new ProtocolGraph(args);
+        for (Block block : members) {
+            Block copy = copies.get(block);
+            for (Block next : block.getNextBlocks()) {
+                Block nextCopy = copies.get(next);
+                if (nextCopy != null) copy.addNext(nextCopy);
+            }
+            result.addBlock(copy);
+        }
+        return result;
+    }
+
+    private StepFunction traceChunk(long from, long to) {
+        StepFunction chunk = new StepFunction();
+        double value = maxTraffic(from);
+        chunk.setValueAt(from, value);
+        long nextStep = firstTimeExceeding(value);
+        while (nextStep <= to) {
+            value = maxTraffic(nextStep);
+            chunk.setValueAt(nextStep, value);
+            nextStep = firstTimeExceeding(value);
+        }
+        return chunk;
+    }
+
+    /**
+     * The coarsest time unit of this graph, i.e. the greatest common divisor of all block periods and message offsets
+     *
+     * @return the time base, at least 1
+     */
+    public long timeBase() {
+        long gcd = 0;
+        for (Block block : blocks.values()) {
+            gcd = gcd(gcd, block.getPeriod());
+            for (int i = 0; i < block.getNumMessages(); i++) {
+                gcd = gcd(gcd, block.getMessageOffset(i));
+            }
+        }
+        return Math.max(gcd, 1);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     * Create a copy of this graph with all periods and offsets divided by <code>timeBase</code>. A message at offset
+     * <code>n * timeBase</code> is then counted in all intervals of reduced length <code>n + 1</code>, so the traffic
+     * in an interval of length <code>t</code> in this graph equals the traffic in an interval of length
+     * <code>ceil(t / timeBase)</code> in the reduced graph (see {@link PseudoPeriodicFunction#scaleTime(long)}).
+     *
+     * @param timeBase a divisor of all periods and offsets, see {@link #timeBase()}
+     * @return the reduced graph, or this graph if <code>timeBase</code> is 1
+     */
+    public ProtocolGraph reduceTimeBase(long timeBase) {
+        if (timeBase == 1) {
+            return this;
+        }
+        if (timeBase < 1 || timeBase() % timeBase != 0) {
+            throw new IllegalArgumentException("Time base " + timeBase + " does not divide all periods and offsets");
+        }
+
+        // Nothing is rounded if the grid divides everything
+        return quantize(timeBase);
+    }
+
+    /**
+     * Create a coarser copy of this graph with all periods and offsets rounded down to multiples of <code>grid</code>,
+     * measured in units of <code>grid</code>. Messages that would end up at or after the end of their shortened block
+     * are moved to its last slot. Between any two messages, the reduced distance is at most <code>ceil(d / grid)</code>
+     * for an original distance of <code>d</code>, so traffic bounds calculated on the result remain upper bounds (see
+     * {@link PseudoPeriodicFunction#scaleTimeConservatively(long)}).
+     *
+     * @param grid the grid to round to, at most the shortest block period
+     * @return the quantized graph
+     */
+    public ProtocolGraph quantize(long grid) {
+        if (grid < 1 || grid > shortestBlockLength()) {
+            throw new IllegalArgumentException("Grid " + grid + " must be positive and no longer than the shortest block (" + shortestBlockLength() + ")");
+        }
+
+        Map<Block, Block> quantized = new HashMap<>();
+        for (Block block : blocks.values()) {
+            MessageBlock quantizedBlock = new MessageBlock(block.getCompactLabel(), block.getPeriod() / grid);
+            for (Message msg : block) {
+                long offset = Math.min(msg.getOffset() / grid, quantizedBlock.getPeriod() - 1);
+                quantizedBlock.addMessage(new Message(msg.getLabel(), quantizedBlock, offset, msg.getSize()));
+            }
+            quantized.put(block, quantizedBlock);
+        }
+
+        ProtocolGraph result = new ProtocolGraph(args);
+        for (Block block : blocks.values()) {
+            Block quantizedBlock = quantized.get(block);
+            for (Block next : block.getNextBlocks()) {
+                quantizedBlock.addNext(quantized.get(next));
+            }
+            result.addBlock(quantizedBlock);
+        }
+
+        return result;
+    }
+
+    /**
+     * Merge blocks that can not be told apart by the traffic generated on the paths starting in them. Blocks start out
+     * grouped by their timing, and groups are split by partition refinement until all blocks in a group have
+     * successors in the same groups. Every path in this graph then maps to a path with identical timing in the
+     * resulting graph and vice versa, so all traffic bounds are unchanged.
+     *
+     * @return a graph with one block per group, labeled after the first block of the group (the others become aliases)
+     */
+    public ProtocolGraph quotient() {
+        List<Block> sorted = new ArrayList<>(blocks.values());
+        sorted.sort(Comparator.comparing(Block::getCompactLabel));
+
+        Map<Block, Integer> groups = new HashMap<>();
+        Map<List<Long>, Integer> timings = new HashMap<>();
+        for (Block block : sorted) {
+            groups.put(block, timings.computeIfAbsent(superBlockTiming(Collections.singletonList(block)), t -> timings.size()));
+        }
+
+        int groupCount = timings.size();
+        while (true) {
+            Map<Block, Integer> refinedGroups = new HashMap<>();
+            Map<List<Object>, Integer> signatures = new HashMap<>();
+            for (Block block : sorted) {
+                Set<Integer> nextGroups = new TreeSet<>();
+                for (Block next : block.getNextBlocks()) {
+                    nextGroups.add(groups.get(next));
+                }
+                List<Object> signature = Arrays.asList(groups.get(block), nextGroups);
+                refinedGroups.put(block, signatures.computeIfAbsent(signature, s -> signatures.size()));
+            }
+
+            // Refinement only ever splits groups, so an unchanged count means the partition is stable
+            groups = refinedGroups;
+            if (signatures.size() == groupCount) {
+                break;
+            }
+            groupCount = signatures.size();
+        }
+
+        Map<Integer, Block> representatives = new HashMap<>();
+        Map<Integer, Block> merged = new HashMap<>();
+        for (Block block : sorted) {
+            int group = groups.get(block);
+            if (representatives.containsKey(group)) {
+                merged.get(group).addAlias(block.getCompactLabel());
+                continue;
+            }
+
+            MessageBlock mergedBlock = new MessageBlock(block.getCompactLabel(), block.getPeriod());
+            for (Message msg : block) {
+                mergedBlock.addMessage(new Message(msg.getLabel(), mergedBlock, msg.getOffset(), msg.getSize()));
+            }
+            representatives.put(group, block);
+            merged.put(group, mergedBlock);
+        }
+
+        ProtocolGraph result = new ProtocolGraph(args);
+        for (Map.Entry<Integer, Block> entry : representatives.entrySet()) {
+            Block mergedBlock = merged.get(entry.getKey());
+            for (Block next : entry.getValue().getNextBlocks()) {
+                mergedBlock.addNext(merged.get(groups.get(next)));
+            }
+            result.addBlock(mergedBlock);
+        }
 
         return result;
     }
 
     public FullyConnectedProtocolGraph fullyConnected(int numSuccessiveBlocks) {
-        Set<Block> superBlocks = getSuccessiveBlocks(numSuccessiveBlocks).stream()
-                .map(this::blocksToSuperBlock)
-                .collect(Collectors.toSet());
+        // Paths through different blocks with identical timing result in identical super blocks, only keep the first
+        // of them (by label) and remember the others as aliases
+        List<List<Block>> paths = new ArrayList<>(getSuccessiveBlocks(numSuccessiveBlocks));
+        paths.sort(Comparator.comparing(ConcatenatedBlock::label));
+
+        Map<List<Long>, Block> superBlocksByTiming = new HashMap<>();
+        for (List<Block> path : paths) {
+            List<Long> timing = superBlockTiming(path);
+            Block superBlock = superBlocksByTiming.get(timing);
+            if (superBlock == null) {
+                superBlocksByTiming.put(timing, blocksToSuperBlock(path));
+            } else {
+                superBlock.addAlias(ConcatenatedBlock.label(path));
+            }
+        }
+        Collection<Block> superBlocks = superBlocksByTiming.values();
 
         for (Block a : superBlocks) {
             for (Block b : superBlocks) {
@@ -145,7 +1140,7 @@ public class ProtocolGraph {
         superBlocks.forEach(result::addBlock);
 
         if (args.verbose) {
-            System.out.println("Created fully-connected model (" + superBlocks.size() + " blocks)");
+            System.out.println("Created fully-connected model (" + superBlocks.size() + " blocks for " + paths.size() + " paths)");
         }
 
         return result;
@@ -180,20 +1175,27 @@ public class ProtocolGraph {
     }
 
     public Block blocksToSuperBlock(List<Block> blocks) {
-        long duration = blocks.stream().mapToLong(Block::getPeriod).sum();
-        String label = blocks.stream().map(Block::getLabel).collect(Collectors.joining("--"));
-        Block superBlock = new Block(label, duration);
+        return new ConcatenatedBlock(blocks);
+    }
+
+    /**
+     * Describe the timing of the super block built from <code>blocks</code> as its period followed by the offset and
+     * size of each message. Super blocks with equal timing generate exactly the same traffic.
+     */
+    private List<Long> superBlockTiming(List<Block> blocks) {
+        List<Long> timing = new ArrayList<>();
+        timing.add(blocks.stream().mapToLong(Block::getPeriod).sum());
 
         long globalOffset = 0;
         for (Block block : blocks) {
-            for (Message msg : block) {
-                Message cloned = new Message(msg.getLabel(), superBlock, globalOffset + msg.getOffset(), msg.getSize());
-                superBlock.addMessage(cloned);
+            for (int i = 0; i < block.getNumMessages(); i++) {
+                timing.add(globalOffset + block.getMessageOffset(i));
+                timing.add((long) block.getMessageSize(i));
             }
 
             globalOffset += block.getPeriod();
         }
 
-        return superBlock;
+        return timing;
     }
 }
@@ -45,6 +45,69 @@ public class PseudoPeriodicFunction {
         return getValue(leftover) + repetitions * periodIncrement;
     }
 
+    /**
+     * Map a function calculated on a graph with reduced time base (see {@link ProtocolGraph#reduceTimeBase(long)})
+     * back to the original time unit. The value at time <code>t</code> of the result is the value of this function at
+     * <code>ceil(t / timeBase)</code>, so a step at <code>n</code> moves to <code>(n - 1) * timeBase + 1</code>.
+     *
+     * @param timeBase the time base the graph was reduced by
+     * @return the function in the original time unit, or this function if <code>timeBase</code> is 1
+     */
+    public PseudoPeriodicFunction scaleTime(long timeBase) {
+        if (timeBase == 1) {
+            return this;
+        }
+
+        PseudoPeriodicFunction result = new PseudoPeriodicFunction(periodBegin * timeBase, periodLength * timeBase, periodIncrement);
+        for (int i = 0; i < incrementTimeSteps.size(); i++) {
+            long time = incrementTimeSteps.get(i);
+            result.setValueAt(time <= 0 ? time : (time - 1) * timeBase + 1, incrementValues.get(i));
+        }
+        if (!incrementTimeSteps.isEmpty()) {
+            long validUpTo = initialPart.getValidUpTo();
+            result.setValueAt(validUpTo * timeBase, initialPart.maximumValue());
+            // getValue needs the scaled initial part up to (periodBegin + periodLength) * timeBase - 1. If the initial
+            // part ends just before the end of the first period (e.g. a period of length 1), the scaled times up to
+            // there take the value at validUpTo + 1.
+            if (validUpTo < periodBegin + periodLength) {
+                double next = getValue(validUpTo + 1);
+                result.setValueAt(validUpTo * timeBase + 1, next);
+                result.setValueAt((validUpTo + 1) * timeBase - 1, next);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Map a function calculated on a quantized graph (see {@link ProtocolGraph#quantize(long)}) back to the original
+     * time unit. Any two messages <code>d</code> apart in the original graph are at most <code>ceil(d / grid)</code>
+     * apart in the quantized graph, so the value at time <code>t</code> of the result is the value of this function at
+     * <code>ceil((t - 1) / grid) + 1</code>. Compared to {@link #scaleTime(long)}, every step moves one grid unit
+     * earlier.
+     *
+     * @param grid the grid the graph was quantized to
+     * @return an upper bound of the traffic in the original graph
+     */
+    public PseudoPeriodicFunction scaleTimeConservatively(long grid) {
+        if (grid == 1) {
+            return this;
+        }
+
+        PseudoPeriodicFunction result = new PseudoPeriodicFunction(periodBegin * grid, periodLength * grid, periodIncrement);
+        // The initial part of the result reaches one step into the first repetition of this function
+        long end = periodBegin + periodLength + 1;
+        result.setValueAt(0, getValue(0));
+        for (int i = 0; i < incrementTimeSteps.size() && incrementTimeSteps.get(i) < end; i++) {
+            long time = incrementTimeSteps.get(i);
+            if (time > 0) {
+                result.setValueAt(time == 1 ? 1 : (time - 2) * grid + 2, incrementValues.get(i));
+            }
+        }
+        result.setValueAt((end - 2) * grid + 2, getValue(end));
+        result.setValueAt((end - 1) * grid, getValue(end));
+        return result;
+    }
+
     public ArrivalCurve concaveHull() {
         Num lastSegmentGrad = rational(periodIncrement, periodLength);
 
@@ -0,0 +1,41 @@
+package org.networkcalculus.dnc.gsi_input;
+
+/**
+ * A block stretched or compressed to a different length. Messages are not copied, but looked up in the underlying
+ * block and have their offsets scaled when requested.
+ */
+public class RescaledBlock extends Block {
+    private final Block block;
+    private final double scalingFactor;
+
+    public RescaledBlock(Block block, long length) {
+        super(block.getCompactLabel(), length);
+        this.block = block;
+        this.scalingFactor = length / (double) block.getPeriod();
+        rebuildInBlockTraffic();
+    }
+
+    public Block getBlock() {
+        return block;
+    }
+
+    @Override
+    public int getNumMessages() {
+        return block.getNumMessages();
+    }
+
+    @Override
+    String getMessageLabel(int idx) {
+        return block.getMessageLabel(idx);
+    }
+
+    @Override
+    long getMessageOffset(int idx) {
+        return Math.round(scalingFactor * block.getMessageOffset(idx));
+    }
+
+    @Override
+    int getMessageSize(int idx) {
+        return block.getMessageSize(idx);
+    }
+}
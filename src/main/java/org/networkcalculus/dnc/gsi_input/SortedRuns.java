@@ -0,0 +1,93 @@
+package org.networkcalculus.dnc.gsi_input;
+
+/**
+ * Several runs of (time, value) pairs, each sorted by time, e.g. the steps of several step functions. The runs are
+ * merged with a heap over the next time of each run, so only one position per run is kept in memory instead of all
+ * pairs.
+ */
+abstract class SortedRuns {
+    private final int runs;
+
+    SortedRuns(int runs) {
+        this.runs = runs;
+    }
+
+    abstract int size(int run);
+
+    abstract long getTime(int run, int idx);
+
+    abstract double getValue(int run, int idx);
+
+    /**
+     * Append the running maximum of the values of all runs to <code>target</code>, starting from <code>max</code>,
+     * with one step at each distinct time
+     *
+     * @return the maximum of all values and <code>max</code>
+     */
+    double appendMaximum(StepFunction target, double max) {
+        int[] heap = new int[runs];
+        int[] positions = new int[runs];
+        int heapSize = 0;
+        for (int run = 0; run < runs; run++) {
+            if (size(run) > 0) {
+                heap[heapSize] = run;
+                siftUp(heap, positions, heapSize++);
+            }
+        }
+
+        while (heapSize > 0) {
+            long time = nextTime(heap[0], positions);
+            do {
+                int run = heap[0];
+                max = Math.max(max, getValue(run, positions[run]));
+                positions[run]++;
+                if (positions[run] == size(run)) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, positions, heapSize);
+            } while (heapSize > 0 && nextTime(heap[0], positions) == time);
+
+            target.setValueAt(time, max);
+        }
+        return max;
+    }
+
+    private long nextTime(int run, int[] positions) {
+        return getTime(run, positions[run]);
+    }
+
+    private void siftUp(int[] heap, int[] positions, int idx) {
+        int run = heap[idx];
+        long time = nextTime(run, positions);
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (nextTime(heap[parent], positions) <= time) {
+                break;
+            }
+            heap[idx] = heap[parent];
+            idx = parent;
+        }
+        heap[idx] = run;
+    }
+
+    private void siftDown(int[] heap, int[] positions, int heapSize) {
+        if (heapSize == 0) {
+            return;
+        }
+        int run = heap[0];
+        long time = nextTime(run, positions);
+        int idx = 0;
+        while (2 * idx + 1 < heapSize) {
+            int child = 2 * idx + 1;
+            if (child + 1 < heapSize && nextTime(heap[child + 1], positions) < nextTime(heap[child], positions)) {
+                child++;
+            }
+            if (nextTime(heap[child], positions) >= time) {
+                break;
+            }
+            heap[idx] = heap[child];
+            idx = child;
+        }
+        heap[idx] = run;
+    }
+}
@@ -1,21 +1,50 @@
 package org.networkcalculus.dnc.gsi_input;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntPredicate;
 
 /**
  * @author Malte Schütze
  */
 public class StepFunction {
-    private List<Long> incrementTimeSteps = new ArrayList<>();
-    private List<Double> incrementValues = new ArrayList<>();
+    // Functions with fewer steps are searched without a dense index
+    static final int MIN_DENSE_INDEX_STEPS = 64;
+
+    private static volatile boolean denseIndexEnabled;
+
+    private final StepStorage steps = StepStorage.create();
     private long validUpTo = 0;
 
+    // Once periodic, f(t + periodLength) = f(t) + periodIncrement for all t >= periodBegin, and only the steps up to
+    // validUpTo are stored. The steps of the first period start at periodStep.
+    private long periodBegin = -1;
+    private long periodLength;
+    private double periodIncrement;
+    private int periodStep;
+    // Dense index of the stored steps, rebuilt once the function has doubled its steps since, null if outdated
+    private volatile DenseIndex denseIndex;
+
+    /**
+     * Look up times through a dense table of time buckets instead of a binary search over all steps, for step
+     * functions created from now on as well as existing ones
+     */
+    static void setDenseIndexEnabled(boolean enabled) {
+        denseIndexEnabled = enabled;
+    }
+
+    static boolean isDenseIndexEnabled() {
+        return denseIndexEnabled;
+    }
+
     public void setValueAt(long time, double value) {
-        if (incrementTimeSteps.isEmpty()) {
-            incrementTimeSteps.add(time);
-            incrementValues.add(value);
+        if (isPeriodic()) {
+            throw new IllegalStateException("Periodic function can not be modified");
+        }
+
+        if (steps.size() == 0) {
+            steps.add(time, value);
             validUpTo = time;
             return;
         }
@@ -28,20 +57,19 @@ public class StepFunction {
             throw new IllegalArgumentException("Step function must be monotonic");
         }
 
-        int lastIdx = incrementTimeSteps.size() - 1;
-        if (time == incrementTimeSteps.get(lastIdx)) {
-            incrementValues.set(lastIdx, value);
+        int lastIdx = steps.size() - 1;
+        if (time == steps.getTime(lastIdx)) {
+            steps.setValue(lastIdx, value);
             return;
         }
 
         validUpTo = time;
 
-        if (incrementValues.get(incrementValues.size() - 1) == value) {
+        if (steps.getValue(lastIdx) == value) {
             return; // only store distinct times + values
         }
 
-        incrementTimeSteps.add(time);
-        incrementValues.add(value);
+        steps.add(time, value);
     }
 
     /**
@@ -50,33 +78,181 @@ public class StepFunction {
      * @return
      */
     public long getValidUpTo() {
+        return isPeriodic() ? Long.MAX_VALUE : validUpTo;
+    }
+
+    /**
+     * The maximum point up to which steps are stored, which is the end of the first period once the function is
+     * periodic
+     */
+    long getStoredUpTo() {
         return validUpTo;
     }
 
+    /**
+     * Declare that <code>f(t + length) = f(t) + increment</code> for all <code>t >= begin</code>. The steps after the
+     * first period are dropped, and the function is defined everywhere from then on but can no longer be modified.
+     */
+    void setPeriodic(long begin, long length, double increment) {
+        if (begin < 0 || length <= 0 || increment <= 0) {
+            throw new IllegalArgumentException("Invalid period " + length + " with increment " + increment + " from " + begin);
+        }
+        if (begin + length > validUpTo) {
+            throw new IllegalArgumentException("Function not defined to " + (begin + length) + " (valid up to " + validUpTo + ")");
+        }
+        if (getValue(begin + length) != getValue(begin) + increment) {
+            throw new IllegalArgumentException("Function does not increase by " + increment + " in the period from " + begin);
+        }
+
+        steps.truncate(indexAfter(begin + length));
+        denseIndex = null;
+        validUpTo = begin + length;
+        periodStep = indexAfter(begin);
+        periodBegin = begin;
+        periodLength = length;
+        periodIncrement = increment;
+    }
+
+    /**
+     * Remove all steps and the period, so the function can be built again. Cursors of the function stay usable.
+     */
+    void clear() {
+        steps.truncate(0);
+        denseIndex = null;
+        validUpTo = 0;
+        periodBegin = -1;
+    }
+
+    boolean isPeriodic() {
+        return periodBegin >= 0;
+    }
+
+    /**
+     * Whether the function is periodic from <code>time</code> on with a multiple of its period
+     */
+    boolean repeatsFrom(long time, long length, double increment) {
+        return isPeriodic() && periodBegin <= time && length % periodLength == 0
+                && increment == periodIncrement * (length / periodLength);
+    }
+
+    /**
+     * The begin of the period, see {@link #setPeriodic(long, long, double)}
+     */
+    long getPeriodBegin() {
+        if (!isPeriodic()) {
+            throw new IllegalStateException("Function is not periodic");
+        }
+        return periodBegin;
+    }
+
+    long getPeriodLength() {
+        return periodLength;
+    }
+
+    double getPeriodIncrement() {
+        return periodIncrement;
+    }
+
     public double getValue(long time) {
-        if (time > validUpTo)
-            throw new IllegalArgumentException("Function not defined to " + time + " (valid up to " + validUpTo + ")");
+        if (time > validUpTo) {
+            if (!isPeriodic())
+                throw new IllegalArgumentException("Function not defined to " + time + " (valid up to " + validUpTo + ")");
 
-        int idx = Collections.binarySearch(incrementTimeSteps, time);
+            long periods = (time - periodBegin) / periodLength;
+            return getValue(time - periods * periodLength) + periods * periodIncrement;
+        }
+
+        int idx = searchTime(time);
         if (idx >= 0) {
-            return incrementValues.get(idx);
+            return steps.getValue(idx);
         } else {
             idx = -(idx + 1);
             if (idx == 0) {
                 return 0;
             } else {
-                return incrementValues.get(idx - 1);
+                return steps.getValue(idx - 1);
             }
         }
 
     }
 
+    /**
+     * The number of stored steps, which only cover the first period once the function is periodic
+     */
+    int getNumSteps() {
+        return steps.size();
+    }
+
+    /**
+     * The time of the step at <code>idx</code>. Once the function is periodic, the indices after the stored steps
+     * continue with the steps of the following periods, so callers can iterate over them without storing them.
+     */
+    long getTimeAt(int idx) {
+        if (idx < steps.size()) {
+            return steps.getTime(idx);
+        }
+        return steps.getTime(repeatedStep(idx)) + periodsBefore(idx) * periodLength;
+    }
+
+    /**
+     * The value of the step at <code>idx</code>, see {@link #getTimeAt(int)}
+     */
+    double getValueAt(int idx) {
+        if (idx < steps.size()) {
+            return steps.getValue(idx);
+        }
+        return steps.getValue(repeatedStep(idx)) + periodsBefore(idx) * periodIncrement;
+    }
+
+    /**
+     * The stored step that the step at <code>idx</code> repeats
+     */
+    private int repeatedStep(int idx) {
+        if (!isPeriodic()) {
+            throw new IndexOutOfBoundsException("No step " + idx + " (" + steps.size() + " steps)");
+        }
+        return periodStep + (idx - periodStep) % (steps.size() - periodStep);
+    }
+
+    /**
+     * The number of periods the step at <code>idx</code> lies after the stored one it repeats
+     */
+    private long periodsBefore(int idx) {
+        return (idx - periodStep) / (steps.size() - periodStep);
+    }
+
+    /**
+     * The index of the first step strictly after <code>time</code>, or the number of steps if there is none. Once the
+     * function is periodic, this counts the steps of all periods up to <code>time</code>, see {@link #getTimeAt(int)}.
+     */
+    int indexAfter(long time) {
+        if (time > validUpTo && isPeriodic()) {
+            // Shift the time into the first period, which holds the stored steps after periodStep
+            long periods = (time - periodBegin - 1) / periodLength;
+            int idx = indexAfter(time - periods * periodLength);
+            return Math.toIntExact(idx + periods * (steps.size() - periodStep));
+        }
+
+        int idx = searchTime(time);
+        return idx >= 0 ? idx + 1 : -(idx + 1);
+    }
+
     public List<Double> getIncrementValues() {
-        return Collections.unmodifiableList(incrementValues);
+        return new IncrementView<Double>() {
+            @Override
+            public Double get(int idx) {
+                return steps.getValue(idx);
+            }
+        };
     }
 
     public List<Long> getIncrementTimeSteps() {
-        return Collections.unmodifiableList(incrementTimeSteps);
+        return new IncrementView<Long>() {
+            @Override
+            public Long get(int idx) {
+                return steps.getTime(idx);
+            }
+        };
     }
 
     /**
@@ -91,16 +267,25 @@ public class StepFunction {
         if (time < 0) throw new IllegalArgumentException("Negative interval");
 
         double max = 0;
-        int idx = 0;
-        while (idx < incrementTimeSteps.size() && incrementTimeSteps.get(idx) <= latestOffset) {
-            double trafficInPrefix = idx == 0 ? 0 : incrementValues.get(idx - 1);
-            long totalTime = incrementTimeSteps.get(idx) + time - 1;
-            double intervalTraffic = getValue(totalTime) - trafficInPrefix;
+        int starts = indexAfter(latestOffset);
+        // Index of the last step at or before the end of the current interval, which only ever moves forward, so each
+        // search only has to cover the steps after it
+        int end = -1;
+        for (int idx = 0; idx < starts; idx++) {
+            double trafficInPrefix = idx == 0 ? 0 : getValueAt(idx - 1);
+            long totalTime = getTimeAt(idx) + time - 1;
+            double intervalTraffic;
+            if (totalTime <= validUpTo) {
+                end = gallop(end + 1, i -> steps.getTime(i) <= totalTime) - 1;
+                intervalTraffic = (end < 0 ? 0 : steps.getValue(end)) - trafficInPrefix;
+            } else if (isPeriodic()) {
+                intervalTraffic = getValue(totalTime) - trafficInPrefix;
+            } else {
+                throw new IllegalArgumentException("Function not defined to " + totalTime + " (valid up to " + validUpTo + ")");
+            }
             if (intervalTraffic > max) {
                 max = intervalTraffic;
             }
-
-            idx++;
         }
 
         return max;
@@ -110,20 +295,20 @@ public class StepFunction {
      * Retrieve the time of the last value change in the function
      */
     public long lastStepTime() {
-        if (incrementTimeSteps.isEmpty()) {
+        if (steps.size() == 0) {
             throw new IllegalStateException("No step in function");
         }
-        return incrementTimeSteps.get(incrementTimeSteps.size() - 1);
+        return steps.getTime(steps.size() - 1);
     }
 
     /**
-     * Retrieve the maximum value of the function
+     * Retrieve the maximum value of the function, which is unbounded once it is periodic
      */
     public double maximumValue() {
-        if (incrementValues.isEmpty()) {
+        if (steps.size() == 0) {
             throw new IllegalStateException("No step in function");
         }
-        return incrementValues.get(incrementValues.size() - 1);
+        return isPeriodic() ? Double.POSITIVE_INFINITY : steps.getValue(steps.size() - 1);
     }
 
     /**
@@ -136,14 +321,14 @@ public class StepFunction {
             throw new IllegalArgumentException("No increment time after " + time + " (last step at " + lastStepTime() + ")");
         }
 
-        int idx = Collections.binarySearch(incrementTimeSteps, time);
+        int idx = searchTime(time);
         if (idx >= 0) {
             // We want the next step /after/ the specified time
             // So if the specified time is exactly at a step, we pick the next one
-            return incrementTimeSteps.get(idx + 1);
+            return steps.getTime(idx + 1);
         } else {
             idx = -(idx + 1);
-            return incrementTimeSteps.get(idx);
+            return steps.getTime(idx);
         }
     }
 
@@ -153,16 +338,219 @@ public class StepFunction {
      * @param value Value threshold
      */
     public long firstTimeExceeding(double value) {
+        if (isPeriodic() && value >= steps.getValue(steps.size() - 1)) {
+            // Find the number of periods after which the last value of the first period exceeds value, the time is
+            // then in that period
+            double periodMax = getValue(periodBegin + periodLength - 1);
+            long periods = (long) Math.floor((value - periodMax) / periodIncrement) + 1;
+            if (value - periods * periodIncrement >= periodMax) {
+                periods++;
+            }
+            long time = Math.max(firstTimeExceeding(value - periods * periodIncrement), periodBegin);
+            return time + periods * periodLength;
+        }
+
         if (value >= maximumValue()) {
             throw new IllegalArgumentException("No value above " + value + " (fn max value: " + maximumValue() + ")");
         }
 
-        int idx = Collections.binarySearch(incrementValues, value);
+        int idx = searchValue(value);
         if (idx >= 0) {
-            return incrementTimeSteps.get(idx + 1);
+            return steps.getTime(idx + 1);
         } else {
             idx = -(idx + 1);
-            return incrementTimeSteps.get(idx);
+            return steps.getTime(idx);
+        }
+    }
+
+    /**
+     * Exponential search for the first index from <code>fromIndex</code> on whose step is not <code>before</code> the
+     * searched position, or the number of steps if there is none. <code>before</code> must hold for a prefix of the
+     * steps, including all steps before <code>fromIndex</code>. The cost is logarithmic in the distance of the result
+     * from <code>fromIndex</code> rather than in the number of steps.
+     */
+    private int gallop(int fromIndex, IntPredicate before) {
+        int size = steps.size();
+        int low = fromIndex;
+        int bound = 1;
+        while (low + bound - 1 < size && before.test(low + bound - 1)) {
+            low += bound;
+            bound <<= 1;
+        }
+
+        int high = Math.min(low + bound - 1, size);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (before.test(mid)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A cursor for queries with increasing arguments, see {@link Cursor}
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A position in the steps of this function that answers queries by galloping forward from the result of the
+     * previous query (see {@link #gallop(int, IntPredicate)}). A sweep with increasing arguments over all steps thus
+     * costs amortized O(1) per query. A query with a smaller argument starts from the first step again. Cursors stay
+     * valid while the function is extended, but are not thread-safe.
+     */
+    class Cursor {
+        // Index of the last step at or before the previous query, or -1
+        private int position = -1;
+
+        StepFunction getFunction() {
+            return StepFunction.this;
+        }
+
+        /**
+         * Same as {@link StepFunction#getValue(long)}
+         */
+        double getValue(long time) {
+            if (time > validUpTo) {
+                return StepFunction.this.getValue(time);
+            }
+            if (position >= steps.size() || (position >= 0 && steps.getTime(position) > time)) {
+                position = -1;
+            }
+
+            position = gallop(position + 1, i -> steps.getTime(i) <= time) - 1;
+            return position < 0 ? 0 : steps.getValue(position);
+        }
+
+        /**
+         * Same as {@link StepFunction#firstTimeExceeding(double)}
+         */
+        long firstTimeExceeding(double value) {
+            if (steps.size() == 0 || value >= steps.getValue(steps.size() - 1)) {
+                return StepFunction.this.firstTimeExceeding(value);
+            }
+            if (position >= steps.size() || (position >= 0 && steps.getValue(position) > value)) {
+                position = -1;
+            }
+
+            position = gallop(position + 1, i -> steps.getValue(i) <= value) - 1;
+            return steps.getTime(position + 1);
+        }
+    }
+
+    /**
+     * Binary search over the increment times, with the same result convention as
+     * {@link java.util.Collections#binarySearch(List, Object)}
+     */
+    private int searchTime(long time) {
+        int low = 0;
+        int high = steps.size() - 1;
+        DenseIndex index = denseIndex();
+        if (index != null) {
+            if (time > index.lastTime) {
+                low = index.steps;
+            } else if (time >= index.firstTime) {
+                int bucket = (int) ((time - index.firstTime) / index.bucketWidth);
+                low = index.firstSteps[bucket];
+                high = index.firstSteps[bucket + 1] - 1;
+            } else {
+                high = -1;
+            }
+        }
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midTime = steps.getTime(mid);
+            if (midTime < time) {
+                low = mid + 1;
+            } else if (midTime > time) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * The dense index of the stored steps if it is enabled, built again if the function has doubled its steps since
+     */
+    private DenseIndex denseIndex() {
+        if (!denseIndexEnabled || steps.size() < MIN_DENSE_INDEX_STEPS) {
+            return null;
+        }
+        DenseIndex index = denseIndex;
+        if (index == null || 2 * index.steps <= steps.size()) {
+            index = new DenseIndex(steps);
+            denseIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Maps the times between the first and the last stored step to step indices without a search: the time range is
+     * cut into one bucket per step, and the table holds the first step of each bucket. A lookup then only searches the
+     * steps of a single bucket, which for evenly spread steps are O(1). Steps added later lie after the last time of
+     * the index and are searched as usual.
+     */
+    private static class DenseIndex {
+        final int steps;
+        final long firstTime;
+        final long lastTime;
+        final long bucketWidth;
+        // Index of the first step at or after the start of each bucket, followed by the number of steps
+        final int[] firstSteps;
+
+        DenseIndex(StepStorage storage) {
+            this.steps = storage.size();
+            this.firstTime = storage.getTime(0);
+            this.lastTime = storage.getTime(steps - 1);
+            this.bucketWidth = Math.max(1, (lastTime - firstTime) / steps + 1);
+            int buckets = (int) ((lastTime - firstTime) / bucketWidth) + 1;
+
+            firstSteps = new int[buckets + 1];
+            int idx = 0;
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                long start = firstTime + bucket * bucketWidth;
+                while (storage.getTime(idx) < start) {
+                    idx++;
+                }
+                firstSteps[bucket] = idx;
+            }
+            firstSteps[buckets] = steps;
+        }
+    }
+
+    /**
+     * Binary search over the (strictly increasing) increment values, see {@link #searchTime(long)}
+     */
+    private int searchValue(double value) {
+        int low = 0;
+        int high = steps.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            double midValue = steps.getValue(mid);
+            if (midValue < value) {
+                low = mid + 1;
+            } else if (midValue > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Read-only list view of one of the storage columns
+     */
+    private abstract class IncrementView<T> extends AbstractList<T> implements RandomAccess {
+        @Override
+        public int size() {
+            return steps.size();
         }
     }
 }
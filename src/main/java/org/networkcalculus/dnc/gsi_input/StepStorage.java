@@ -0,0 +1,28 @@
+package org.networkcalculus.dnc.gsi_input;
+
+/**
+ * Breakpoint storage of a {@link StepFunction}: parallel, append-only columns of increment times and values.
+ */
+abstract class StepStorage {
+    /**
+     * Create a storage with the currently configured backend
+     */
+    static StepStorage create() {
+        return MappedStepStorage.isEnabled() ? new MappedStepStorage() : new HeapStepStorage();
+    }
+
+    abstract int size();
+
+    abstract long getTime(int idx);
+
+    abstract double getValue(int idx);
+
+    abstract void add(long time, double value);
+
+    abstract void setValue(int idx, double value);
+
+    /**
+     * Drop all breakpoints from index <code>size</code> on
+     */
+    abstract void truncate(int size);
+}
@@ -0,0 +1,40 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base class for formatters producing text. Each method writes through a UTF-8 writer on the output stream, which is
+ * flushed but not closed afterwards.
+ */
+public abstract class TextOutputFormatter implements OutputFormatter {
+    public abstract void printPseudoperiodicFunction(AnalysisResult result, Writer out) throws IOException;
+
+    public abstract void printArrivalCurve(AnalysisResult result, Writer out) throws IOException;
+
+    public abstract void printMaxTraffic(AnalysisResult result, Writer out) throws IOException;
+
+    @Override
+    public void printPseudoperiodicFunction(AnalysisResult result, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        printPseudoperiodicFunction(result, writer);
+        writer.flush();
+    }
+
+    @Override
+    public void printArrivalCurve(AnalysisResult result, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        printArrivalCurve(result, writer);
+        writer.flush();
+    }
+
+    @Override
+    public void printMaxTraffic(AnalysisResult result, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        printMaxTraffic(result, writer);
+        writer.flush();
+    }
+}
@@ -0,0 +1,33 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import java.util.Arrays;
+
+/**
+ * The distinct event times of a set, in ascending order
+ */
+class TimeIndex {
+    private final long[] times;
+
+    /**
+     * @param times the event times, in any order and possibly with duplicates; the array is sorted in place
+     * @param count the number of valid entries in <code>times</code>
+     */
+    TimeIndex(long[] times, int count) {
+        Arrays.sort(times, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || times[distinct - 1] != times[i]) {
+                times[distinct++] = times[i];
+            }
+        }
+        this.times = Arrays.copyOf(times, distinct);
+    }
+
+    int size() {
+        return times.length;
+    }
+
+    long getTime(int idx) {
+        return times[idx];
+    }
+}
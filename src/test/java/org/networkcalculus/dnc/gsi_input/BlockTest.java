@@ -2,8 +2,11 @@ package org.networkcalculus.dnc.gsi_input;
 
 import org.networkcalculus.dnc.gsi_input.Block;
 import org.networkcalculus.dnc.gsi_input.DotGraphParser;
+import org.networkcalculus.dnc.gsi_input.Message;
 import org.networkcalculus.dnc.gsi_input.ProtocolGraph;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 /**
@@ -22,6 +25,22 @@ public class BlockTest extends TestCase {
         block = graph.getBlock("B_CRY_0");
     }
 
+    public void testGetMessage() throws Exception {
+        Message message = block.getMessage(4);
+        assertEquals("CRY_0_RF_PREP_PAUSE", message.getLabel());
+        assertEquals(488100000L, message.getOffset());
+        assertEquals(1, message.getSize());
+        assertEquals(message, block.getMessage(4));
+        assertFalse(message.equals(block.getMessage(5)));
+
+        try {
+            block.getMessage(block.getNumMessages());
+            fail();
+        } catch (IndexOutOfBoundsException ex) {
+            // pass
+        }
+    }
+
     public void testMaxPrefix() throws Exception {
         assertEquals("Zero length interval should be 0", 0., block.maxPrefix(0));
         assertEquals(4., block.maxPrefix(1));
@@ -72,4 +91,29 @@ public class BlockTest extends TestCase {
         assertEquals(503394, block.getShortestIntervalWhereMaxTrafficExceeds(6));
     }
 
-}
\ No newline at end of file
+    public void testMaxWindowFunction() {
+        MessageBlock block = new MessageBlock("A", 1000);
+        Random random = new Random(7);
+        long offset = 0;
+        for (int i = 0; i < 300; i++) {
+            // Some messages share their offset
+            offset += random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(5);
+            block.addMessage(new Message("A_" + i, block, offset, 1 + random.nextInt(9)));
+        }
+
+        StepFunction window = block.getMaxWindowFunction();
+        for (long length = 1; length < 1000; length++) {
+            double expected = 0;
+            for (int i = 0; i < block.getNumMessages(); i++) {
+                double traffic = 0;
+                for (int j = i; j < block.getNumMessages() && block.getMessageOffset(j) - block.getMessageOffset(i) < length; j++) {
+                    traffic += block.getMessageSize(j);
+                }
+                expected = Math.max(expected, traffic);
+            }
+            assertEquals(expected, window.getValue(length));
+        }
+        assertEquals(1000, window.getValidUpTo());
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests of {@link CycleRatio} and the heuristic built on it
+ */
+public class CycleRatioTest extends TestCase {
+
+    private ProtocolGraph graph;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        graph = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+    }
+
+    public void testMaximumCycleRatio() {
+        ProtocolGraph modes = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 5);
+        a.addMessage(new Message("A_0", a, 0, 2));
+        a.addMessage(new Message("A_1", a, 3, 1));
+        MessageBlock b = new MessageBlock("B", 7);
+        b.addMessage(new Message("B_0", b, 2, 4));
+        MessageBlock c = new MessageBlock("C", 3);
+        c.addMessage(new Message("C_0", c, 1, 1));
+        a.addNext(a);
+        a.addNext(b);
+        b.addNext(c);
+        c.addNext(b);
+        modes.addBlock(a);
+        modes.addBlock(b);
+        modes.addBlock(c);
+
+        CycleRatio cycle = modes.maximumCycleRatio();
+        assertEquals(Arrays.asList(a), cycle.getCycle());
+        assertEquals(3, cycle.getCycleTraffic());
+        assertEquals(5, cycle.getCycleLength());
+        assertEquals(0.6, cycle.getRate(), 1e-12);
+
+        double highestExcess = 0;
+        for (long time = 0; time <= 300; time++) {
+            double excess = modes.maxTraffic(time) - cycle.getRate() * time;
+            assertTrue("Excess " + excess + " at " + time, excess <= cycle.getBurst() + 1e-9);
+            highestExcess = Math.max(highestExcess, excess);
+        }
+        assertEquals(cycle.getBurst(), highestExcess, 1e-9);
+
+        PseudoPeriodicFunction f = modes.approximateCycleRatio(20);
+        for (long time = 0; time <= 300; time++) {
+            assertTrue(f.getValue(time) >= modes.maxTraffic(time));
+        }
+        assertEquals(modes.maxTraffic(13), f.getValue(13));
+    }
+
+    public void testApproximateCycleRatioIsAboveActualArrivalCurve() {
+        CycleRatio cycle = graph.maximumCycleRatio();
+        assertFalse(cycle.getCycle().isEmpty());
+        for (Block block : graph.getBlocks()) {
+            if (block.getNextBlocks().contains(block)) {
+                assertTrue(cycle.getRate() >= block.totalTrafficInBlock() / (double) block.getPeriod());
+            }
+        }
+
+        PseudoPeriodicFunction f = graph.approximateCycleRatio(2 * graph.longestBlockLength());
+        long time = 0;
+        double value = 0;
+        while (time <= 40_000_000_000L) {
+            assertTrue(f.getValue(time) >= value);
+            time = graph.firstTimeExceeding(value);
+            value = graph.maxTraffic(time);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.networkcalculus.dnc.gsi_input;
 
+import org.networkcalculus.dnc.gsi_input.Block;
 import org.networkcalculus.dnc.gsi_input.DotGraphParser;
 import org.networkcalculus.dnc.gsi_input.FullyConnectedProtocolGraph;
 import org.networkcalculus.dnc.gsi_input.FullyConnectedRescaledProtocolGraph;
@@ -46,4 +47,28 @@ public class FullyConnectedProtocolGraphTest extends TestCase {
             value = graph.maxTraffic(time);
         }
     }
-}
\ No newline at end of file
+
+    public void testPruneDominatedBlocks() {
+        FullyConnectedProtocolGraph pruned = graph.fullyConnected(2);
+        FullyConnectedProtocolGraph unpruned = graph.fullyConnected(2);
+        int blockCount = pruned.getBlockCount();
+
+        int removed = pruned.pruneDominatedBlocks();
+        assertTrue(removed > 0);
+        assertEquals(blockCount - removed, pruned.getBlockCount());
+        for (Block block : pruned.getBlocks()) {
+            assertEquals(pruned.getBlockCount(), block.getNextBlocks().size());
+            assertEquals(pruned.getBlockCount(), block.getPreviousBlocks().size());
+        }
+
+        long time = 0;
+        double value = 0;
+        while (time <= 5_000_000_000L) {
+            assertEquals(unpruned.maxTraffic(time), pruned.maxTraffic(time));
+            assertEquals(unpruned.maxPrefix(time), pruned.maxPrefix(time));
+            assertEquals(unpruned.maxSuffix(time), pruned.maxSuffix(time));
+            time = unpruned.firstTimeExceeding(value);
+            value = unpruned.maxTraffic(time);
+        }
+    }
+}
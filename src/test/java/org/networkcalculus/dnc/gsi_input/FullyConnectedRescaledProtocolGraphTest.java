@@ -41,4 +41,35 @@ public class FullyConnectedRescaledProtocolGraphTest extends TestCase {
             time = rescaledGraph.firstTimeExceeding(value);
         }
     }
-}
\ No newline at end of file
+
+    public void testDividedTrafficIsConvolution() {
+        long length = rescaledGraph.shortestBlockLength();
+        long time = length;
+        int steps = 0;
+        while (time < 2 * length && steps < 200) {
+            double value = rescaledGraph.divideTrafficBetweenPrefixAndSuffix(time);
+            assertEquals(dividedTraffic(time), value);
+            long next = rescaledGraph.nextStepForDividedTraffic(value);
+            assertTrue(next > time);
+            assertEquals(value, dividedTraffic(next - 1));
+            assertTrue(dividedTraffic(next) > value);
+            time = next;
+            steps++;
+        }
+    }
+
+    /**
+     * The max of a prefix and a non-empty suffix, over all prefixes ending at a step of the prefix envelope
+     */
+    private double dividedTraffic(long time) {
+        long inPrefixTime = 0;
+        double inPrefixTraffic = 0;
+        double maxTraffic = 0;
+        while (inPrefixTime < time) {
+            maxTraffic = Math.max(maxTraffic, rescaledGraph.maxSuffix(time - inPrefixTime) + inPrefixTraffic);
+            inPrefixTime = rescaledGraph.firstTimeExceedingInPrefix(inPrefixTraffic);
+            inPrefixTraffic = rescaledGraph.maxPrefix(inPrefixTime);
+        }
+        return maxTraffic;
+    }
+}
@@ -0,0 +1,64 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests of {@link Label}
+ */
+public class LabelTest extends TestCase {
+
+    private ProtocolGraph graph;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        graph = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+    }
+
+    public void testCompactLabels() {
+        Block block = graph.getBlock("B_CRY_0");
+        Label label = ConcatenatedBlock.label(Arrays.asList(block, block));
+        assertEquals("B_CRY_0--B_CRY_0", label.toString());
+        assertEquals(label, Label.find("B_CRY_0--B_CRY_0"));
+        assertEquals(block.getCompactLabel(), Label.find("B_CRY_0"));
+        assertNull(Label.find("B_CRY_0--NO_SUCH_BLOCK"));
+        assertTrue(block.getCompactLabel().compareTo(label) < 0);
+        assertTrue(label.compareTo(graph.getBlock("B_CRY_1").getCompactLabel()) < 0);
+    }
+
+    public void testCompareByRenderedLabel() {
+        Label a = Label.of("A");
+        Label ab = Label.concat(Arrays.asList(a, Label.of("B")));
+        Label exclamation = Label.of("A!");
+        Label dash = Label.of("A-x");
+        // '!' sorts before '-', which sorts before 'x'
+        assertTrue(exclamation.compareTo(ab) < 0);
+        assertTrue(ab.compareTo(dash) < 0);
+        assertTrue(a.compareTo(ab) < 0);
+        assertEquals(0, ab.compareTo(Label.concat(Arrays.asList(a, Label.of("B")))));
+        for (Label x : Arrays.asList(a, ab, exclamation, dash)) {
+            for (Label y : Arrays.asList(a, ab, exclamation, dash)) {
+                assertEquals(Integer.signum(x.toString().compareTo(y.toString())), Integer.signum(x.compareTo(y)));
+            }
+        }
+    }
+
+    public void testSeparatorInLabel() {
+        for (String label : Arrays.asList("A--B", "A-", "-B")) {
+            try {
+                Label.of(label);
+                fail(label);
+            } catch (IllegalArgumentException ex) {
+                // pass
+            }
+        }
+
+        // Message labels are never split, so they may contain the separator
+        MessageBlock block = new MessageBlock("SEPARATOR_BLOCK", 10);
+        block.addMessage(new Message("SEPARATOR_BLOCK--SEPARATOR_MESSAGE", block, 0, 1));
+        assertEquals("SEPARATOR_BLOCK--SEPARATOR_MESSAGE", block.getMessage(0).getLabel());
+        assertNull(Label.find("SEPARATOR_BLOCK--SEPARATOR_MESSAGE"));
+    }
+}
@@ -0,0 +1,99 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.networkcalculus.dnc.curves.ArrivalCurve;
+
+/**
+ * Tests of the output formatters and of reading their exports back
+ */
+public class OutputFormatterTest extends TestCase {
+
+    private ProtocolGraph graph;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        graph = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+    }
+
+    public void testExportFormats() throws Exception {
+        PseudoPeriodicFunction f = graph.approximateSubadditive(1_000_000_000L);
+        AnalysisResult result = new AnalysisResult(graph, f, 2_000_000_000L, true, 0);
+        ArrivalCurve curve = result.getConcaveHull();
+
+        for (OutputFormatter formatter : Arrays.asList(new BinaryOutputFormatter(), new CsvOutputFormatter(), new JsonLinesOutputFormatter())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            formatter.printMaxTraffic(result, out);
+            formatter.printPseudoperiodicFunction(result, out);
+            formatter.printArrivalCurve(result, out);
+
+            CurveExport export;
+            if (formatter instanceof BinaryOutputFormatter) {
+                export = CurveExport.readBinary(new ByteArrayInputStream(out.toByteArray()));
+            } else if (formatter instanceof CsvOutputFormatter) {
+                export = CurveExport.readCsv(new StringReader(out.toString("UTF-8")));
+            } else {
+                export = CurveExport.readJsonLines(new StringReader(out.toString("UTF-8")));
+            }
+
+            assertEquals(formatter.toString(), curve.getSegmentCount(), export.getNumSegments());
+            ArrivalCurve imported = export.toArrivalCurve();
+            assertEquals(curve.getSegmentCount(), imported.getSegmentCount());
+            for (int i = 0; i < curve.getSegmentCount(); i++) {
+                assertEquals(curve.getSegment(i).getX().doubleValue(), imported.getSegment(i).getX().doubleValue());
+                assertEquals(curve.getSegment(i).getGrad().doubleValue(), imported.getSegment(i).getGrad().doubleValue());
+            }
+            assertEquals(f.incrementTimeSteps, export.getApproximation().incrementTimeSteps);
+            assertEquals(f.periodLength, export.getApproximation().periodLength);
+            assertEquals(result.getMaxTraffic().getIncrementValues(), export.getMaxTraffic().getIncrementValues());
+        }
+    }
+
+    public void testPlotDownsampling() throws Exception {
+        PseudoPeriodicFunction f = graph.approximateSubadditive(10_000_000_000L);
+        AnalysisResult result = new AnalysisResult(graph, f, 20_000_000_000L, true, 0);
+        assertTrue(result.getMaxTraffic().getNumSteps() > 50);
+        MatplotlibOutputFormatter formatter = new MatplotlibOutputFormatter();
+        formatter.setMaxPoints(50);
+        StringWriter out = new StringWriter();
+        formatter.printMaxTraffic(result, out);
+
+        String[] lines = out.toString().split("\n");
+        String[] x = lines[1].substring(5, lines[1].length() - 1).split(", ");
+        String[] y = lines[2].substring(5, lines[2].length() - 1).split(", ");
+        assertEquals(x.length, y.length);
+        assertTrue(x.length <= 50);
+        assertEquals("20000000000", x[x.length - 1]);
+        for (int i = 0; i < x.length - 1; i++) {
+            // The plotted step must cover the actual traffic up to the next plotted point
+            long next = Long.parseLong(x[i + 1]) - 1;
+            assertTrue(Double.parseDouble(y[i]) >= graph.maxTraffic(next));
+        }
+    }
+
+    public void testImportFirstSegment() throws Exception {
+        // A burst at the origin, unlike the segment new arrival curves start with
+        CurveExport export = CurveExport.readCsv(new StringReader("segment,0.0,5.0,3.0,true\nsegment,10.0,35.0,1.0,true\n"));
+        ArrivalCurve curve = export.toArrivalCurve();
+        assertEquals(2, curve.getSegmentCount());
+        assertEquals(0., curve.getSegment(0).getX().doubleValue());
+        assertEquals(5., curve.getSegment(0).getY().doubleValue());
+        assertEquals(3., curve.getSegment(0).getGrad().doubleValue());
+        assertEquals(35., curve.getSegment(1).getY().doubleValue());
+    }
+
+    public void testPlotDownsamplingWithoutTimeRange() throws Exception {
+        MatplotlibOutputFormatter formatter = new MatplotlibOutputFormatter();
+        formatter.setMaxPoints(2);
+        StringWriter out = new StringWriter();
+        formatter.writeSteps(out, 4, i -> 7, i -> i);
+        assertEquals("x = [7, 7, 7, 7]\ny = [0.0, 1.0, 2.0, 3.0]\n", out.toString());
+    }
+}
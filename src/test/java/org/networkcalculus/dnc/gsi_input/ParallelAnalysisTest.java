@@ -0,0 +1,102 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests of the analysis on several threads and by strongly connected component
+ */
+public class ParallelAnalysisTest extends TestCase {
+
+    private ProtocolGraph graph;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        graph = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+    }
+
+    public void testApproximateSubadditiveInParallel() throws Exception {
+        PseudoPeriodicFunction sequential = graph.approximateSubadditive(10_000_000_000L, 1);
+        ProtocolGraph fresh = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+        PseudoPeriodicFunction parallel = fresh.approximateSubadditive(10_000_000_000L, 4);
+
+        assertEquals(sequential.periodIncrement, parallel.periodIncrement);
+        assertEquals(sequential.incrementTimeSteps, parallel.incrementTimeSteps);
+        assertEquals(sequential.incrementValues, parallel.incrementValues);
+        // The warmup only extends the prefix functions, which are all the trace reads
+        for (Block block : fresh.getBlocks()) {
+            assertTrue(block.getMaxSuffixFunction().getValidUpTo() <= block.getPeriod());
+        }
+    }
+
+    public void testPrecalculate() throws Exception {
+        ProtocolGraph fresh = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+        fresh.precalculate(10_000_000_000L, 4);
+
+        for (Block block : graph.getBlocks()) {
+            Block other = fresh.getBlock(block.getLabel());
+            assertTrue(other.getMaxPrefixFunction().getValidUpTo() >= block.getPeriod() + 10_000_000_000L);
+            for (long time = 0; time <= 10_000_000_000L; time += 7_777_777L) {
+                assertEquals(block.maxPrefix(time), other.maxPrefix(time));
+                assertEquals(block.maxSuffix(time), other.maxSuffix(time));
+            }
+        }
+    }
+
+    public void testStronglyConnectedComponents() {
+        List<List<Block>> components = graph.stronglyConnectedComponents();
+        Map<Block, Integer> componentOf = new HashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            for (Block block : components.get(i)) {
+                assertNull(componentOf.put(block, i));
+            }
+        }
+        assertEquals(graph.getBlockCount(), componentOf.size());
+
+        for (Block block : graph.getBlocks()) {
+            for (Block next : block.getNextBlocks()) {
+                assertTrue("Successor in a later component", componentOf.get(next) <= componentOf.get(block));
+            }
+        }
+    }
+
+    public void testApproximateByComponent() {
+        ProtocolGraph modes = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 5);
+        a.addMessage(new Message("A_0", a, 0, 2));
+        a.addMessage(new Message("A_1", a, 3, 1));
+        MessageBlock b = new MessageBlock("B", 7);
+        b.addMessage(new Message("B_0", b, 2, 4));
+        MessageBlock c = new MessageBlock("C", 3);
+        c.addMessage(new Message("C_0", c, 1, 1));
+        a.addNext(a);
+        b.addNext(c);
+        c.addNext(b);
+        modes.addBlock(a);
+        modes.addBlock(b);
+        modes.addBlock(c);
+
+        // Disjoint components are combined exactly
+        PseudoPeriodicFunction disjoint = modes.approximateByComponent(60, 2, component -> component.approximateSubadditive(60, 1));
+        for (long time = 0; time <= 60; time++) {
+            assertEquals(modes.maxTraffic(time), disjoint.getValue(time));
+        }
+
+        // A transient block leading into A, and a switch from A to the B/C cycle
+        MessageBlock start = new MessageBlock("START", 4);
+        start.addMessage(new Message("START_0", start, 1, 3));
+        start.addNext(a);
+        a.addNext(b);
+        modes.addBlock(start);
+        assertEquals(3, modes.stronglyConnectedComponents().size());
+
+        PseudoPeriodicFunction coupled = modes.approximateByComponent(60, 2, component -> component.approximateSubadditive(20, 1));
+        for (long time = 0; time <= 200; time++) {
+            assertTrue("Below max traffic at " + time, coupled.getValue(time) >= modes.maxTraffic(time));
+        }
+    }
+}
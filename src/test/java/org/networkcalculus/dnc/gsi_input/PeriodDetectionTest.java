@@ -0,0 +1,132 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests of detecting when the max traffic and the block functions become periodic
+ */
+public class PeriodDetectionTest extends TestCase {
+
+    public void testDetectPeriod() {
+        Args args = new Args();
+        args.detectPeriod = true;
+        ProtocolGraph modes = new ProtocolGraph(args);
+        MessageBlock a = new MessageBlock("A", 5);
+        a.addMessage(new Message("A_0", a, 0, 2));
+        a.addMessage(new Message("A_1", a, 3, 1));
+        MessageBlock b = new MessageBlock("B", 7);
+        b.addMessage(new Message("B_0", b, 2, 4));
+        MessageBlock c = new MessageBlock("C", 3);
+        c.addMessage(new Message("C_0", c, 1, 1));
+        a.addNext(a);
+        b.addNext(c);
+        b.addNext(a);
+        c.addNext(b);
+        modes.addBlock(a);
+        modes.addBlock(b);
+        modes.addBlock(c);
+
+        PseudoPeriodicFunction f = modes.approximateSubadditive(100_000);
+        assertEquals(5, f.periodLength);
+        assertEquals(3., f.periodIncrement);
+        assertTrue(f.periodBegin < 100);
+        for (long time = 0; time <= 1000; time++) {
+            assertEquals(modes.maxTraffic(time), f.getValue(time));
+        }
+        // The max prefix functions only keep their first period, but still answer far beyond it
+        for (Block block : Arrays.asList(a, b, c)) {
+            assertTrue(block.getMaxPrefixFunction().isPeriodic());
+            assertTrue(block.getMaxPrefixFunction().getStoredUpTo() < 1000);
+        }
+        assertEquals(f.getValue(1_000_000_000_000L), modes.maxTraffic(1_000_000_000_000L));
+        long time = modes.firstTimeExceeding(f.getValue(1_000_000_000_000L));
+        assertTrue(time > 1_000_000_000_000L);
+        assertEquals(f.getValue(1_000_000_000_000L), f.getValue(time - 1));
+        assertTrue(f.getValue(time) > f.getValue(time - 1));
+
+        // Without a common rate, the blocks never repeat in the same way
+        ProtocolGraph disjoint = new ProtocolGraph(args);
+        MessageBlock d = new MessageBlock("D", 4);
+        d.addMessage(new Message("D_0", d, 0, 1));
+        d.addNext(d);
+        disjoint.addBlock(a);
+        disjoint.addBlock(d);
+        PseudoPeriodicFunction g = disjoint.approximateSubadditive(200);
+        assertEquals(0, g.periodBegin);
+        assertEquals(200, g.periodLength);
+    }
+
+    public void testDetectPeriodWithinDefaultThreshold() {
+        Args args = new Args();
+        args.detectPeriod = true;
+        ProtocolGraph alternating = new ProtocolGraph(args);
+        MessageBlock a = new MessageBlock("A", 5);
+        a.addMessage(new Message("A_0", a, 1, 2));
+        MessageBlock b = new MessageBlock("B", 5);
+        b.addMessage(new Message("B_0", b, 0, 1));
+        b.addMessage(new Message("B_1", b, 4, 1));
+        a.addNext(b);
+        b.addNext(a);
+        alternating.addBlock(a);
+        alternating.addBlock(b);
+
+        // The cycle is longer than any block, the repetition is still found before 4 times the longest block
+        PseudoPeriodicFunction f = alternating.approximateSubadditive(4 * alternating.longestBlockLength());
+        assertEquals(10, f.periodLength);
+        assertEquals(4., f.periodIncrement);
+        assertTrue(f.periodBegin + f.periodLength <= 20);
+        for (long time = 0; time <= 200; time++) {
+            assertEquals(alternating.maxTraffic(time), f.getValue(time));
+        }
+    }
+
+    public void testEnvelopesBecomePeriodic() {
+        ProtocolGraph graph = alternatingGraph();
+        ProtocolGraph reference = alternatingGraph();
+        for (long time = 0; time <= 100_000; time += 7) {
+            graph.maxPrefix(time);
+            graph.maxSuffix(time);
+        }
+
+        // Both the block functions and the envelopes only keep their first period
+        for (Block block : graph.getBlocks()) {
+            assertTrue(block.getMaxPrefixFunction().isPeriodic());
+            assertTrue(block.getMaxPrefixFunction().getStoredUpTo() < 1000);
+            assertTrue(block.getMaxSuffixFunction().isPeriodic());
+            assertTrue(block.getMaxSuffixFunction().getStoredUpTo() < 1000);
+        }
+        assertTrue(graph.prefixEnvelope(100_000).isPeriodic());
+        assertTrue(graph.suffixEnvelope(100_000).isPeriodic());
+
+        for (long time = 0; time <= 20_000; time++) {
+            long t = time;
+            assertEquals(reference.getBlocks().stream().mapToDouble(b -> b.maxPrefix(t)).max().getAsDouble(), graph.maxPrefix(time));
+            assertEquals(reference.getBlocks().stream().mapToDouble(b -> b.maxSuffix(t)).max().getAsDouble(), graph.maxSuffix(time));
+        }
+        for (double value = 0; value < 1000; value++) {
+            double v = value;
+            assertEquals(reference.getBlocks().stream().mapToLong(b -> b.getEarliestTimeMaxPrefixExceeds(v)).min().getAsLong(), graph.firstTimeExceedingInPrefix(value));
+            assertEquals(reference.getBlocks().stream().mapToLong(b -> b.getEarliestTimeMaxSuffixExceeds(v)).min().getAsLong(), graph.firstTimeExceedingInSuffix(value));
+        }
+        assertEquals(graph.maxPrefix(1_000_000_000_000L - 10) + 4, graph.maxPrefix(1_000_000_000_000L));
+    }
+
+    /**
+     * Two blocks of length 5 that alternate, with a cycle of length 10 and traffic 4
+     */
+    private ProtocolGraph alternatingGraph() {
+        ProtocolGraph graph = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 5);
+        a.addMessage(new Message("A_0", a, 1, 2));
+        MessageBlock b = new MessageBlock("B", 5);
+        b.addMessage(new Message("B_0", b, 0, 1));
+        b.addMessage(new Message("B_1", b, 4, 1));
+        a.addNext(b);
+        b.addNext(a);
+        graph.addBlock(a);
+        graph.addBlock(b);
+        return graph;
+    }
+}
@@ -2,6 +2,7 @@ package org.networkcalculus.dnc.gsi_input;
 
 import junit.framework.TestCase;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -38,6 +39,91 @@ public class ProtocolGraphTest extends TestCase {
         assertEquals(203., graph.maxTraffic(100000000));
     }
 
+    public void testPrefixAndSuffixEnvelope() throws Exception {
+        ProtocolGraph reference = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+        for (long time : Arrays.asList(0L, 1L, 500000L, 2750000000L, 2750000001L, 5_000_000_000L, 1000L, 20_000_000_000L)) {
+            double prefix = reference.getBlocks().stream().mapToDouble(b -> b.maxPrefix(time)).max().getAsDouble();
+            double suffix = reference.getBlocks().stream().mapToDouble(b -> b.maxSuffix(time)).max().getAsDouble();
+            assertEquals(prefix, graph.maxPrefix(time));
+            assertEquals(suffix, graph.maxSuffix(time));
+        }
+
+        for (double value = 0; value < 100; value++) {
+            final double v = value;
+            long prefix = reference.getBlocks().stream().mapToLong(b -> b.getEarliestTimeMaxPrefixExceeds(v)).min().getAsLong();
+            long suffix = reference.getBlocks().stream().mapToLong(b -> b.getEarliestTimeMaxSuffixExceeds(v)).min().getAsLong();
+            assertEquals(prefix, graph.firstTimeExceedingInPrefix(value));
+            assertEquals(suffix, graph.firstTimeExceedingInSuffix(value));
+        }
+    }
+
+    public void testCursorsFollowAddedBlocks() {
+        ProtocolGraph modes = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 10);
+        a.addMessage(new Message("A_0", a, 0, 1));
+        a.addNext(a);
+        modes.addBlock(a);
+
+        StepFunction.Cursor prefix = modes.prefixCursor();
+        StepFunction.Cursor suffix = modes.suffixCursor();
+        assertEquals(1., modes.maxPrefix(5, prefix));
+        assertEquals(1., modes.maxSuffix(10, suffix));
+
+        MessageBlock b = new MessageBlock("B", 10);
+        b.addMessage(new Message("B_0", b, 0, 5));
+        b.addNext(b);
+        modes.addBlock(b);
+        assertEquals(5., modes.maxPrefix(5, prefix));
+        assertEquals(5., modes.maxSuffix(10, suffix));
+        assertEquals(1L, modes.firstTimeExceedingInPrefix(2, prefix));
+
+        modes.removeBlock(b);
+        assertEquals(1., modes.maxPrefix(5, prefix));
+    }
+
+    public void testBlocksAreFrozenOnceAnalysed() {
+        ProtocolGraph modes = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 10);
+        a.addMessage(new Message("A_0", a, 0, 1));
+        MessageBlock b = new MessageBlock("B", 10);
+        a.addNext(a);
+        modes.addBlock(a);
+        assertEquals(1., modes.maxPrefix(5));
+
+        try {
+            a.addMessage(new Message("A_1", a, 5, 3));
+            fail();
+        } catch (IllegalStateException ex) {
+            // pass
+        }
+        try {
+            b.addNext(a);
+            fail();
+        } catch (IllegalStateException ex) {
+            // pass
+        }
+        assertEquals(1., modes.maxPrefix(5));
+
+        // Blocks that were not analysed yet can still be built and added
+        b.addMessage(new Message("B_0", b, 0, 2));
+        b.addNext(b);
+        modes.addBlock(b);
+        assertEquals(2., modes.maxPrefix(5));
+    }
+
+    public void testDenseIndexGivesSameApproximation() throws Exception {
+        PseudoPeriodicFunction expected = graph.approximateSubadditive(1_000_000_000L);
+        StepFunction.setDenseIndexEnabled(true);
+        try {
+            ProtocolGraph dense = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+            PseudoPeriodicFunction f = dense.approximateSubadditive(1_000_000_000L);
+            assertEquals(expected.incrementTimeSteps, f.incrementTimeSteps);
+            assertEquals(expected.incrementValues, f.incrementValues);
+        } finally {
+            StepFunction.setDenseIndexEnabled(false);
+        }
+    }
+
     public void testApproximateSubadditiveIsAboveActualArrivalCurve() throws Exception {
         for (long interval : Arrays.asList(1_000L, 1_000_000L, 1_000_000_000L, 10_000_000_000L)) {
             System.out.println("Testing interval " + interval);
@@ -92,6 +178,15 @@ public class ProtocolGraphTest extends TestCase {
         assertEquals(21., superBlock.maxPrefix(2750000000L));
         assertEquals(42., superBlock.maxPrefix(5500000000L));
         assertEquals(43., superBlock.maxPrefix(5500500000L));
+        assertEquals(1., superBlock.maxSuffix(500000L));
+        assertEquals(22., superBlock.maxSuffix(2750500000L));
+
+        assertEquals(43, superBlock.getNumMessages());
+        assertEquals("CRY_0_SEQ_START_0", superBlock.getMessage(21).getLabel());
+        assertEquals(2750000000L, superBlock.getMessage(21).getOffset());
+        assertEquals("CRY_HALT", superBlock.getMessage(42).getLabel());
+        assertEquals(5500000000L, superBlock.getMessage(42).getOffset());
+        assertSame(superBlock, superBlock.getMessage(42).getBlock());
     }
 
     public void testGetSuccessiveBlocksOfSpecificBlock() {
@@ -127,11 +222,64 @@ public class ProtocolGraphTest extends TestCase {
         }
     }
 
-    public void testDumpGraph() {
+    public void testGetFullyConnectedMergesIdenticalSuperBlocks() throws Exception {
+        ProtocolGraph demo = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/2block-inaccuracy-demo.dot")).parse();
+        FullyConnectedProtocolGraph fcGraph = demo.fullyConnected(2);
+
+        assertEquals(7, demo.getSuccessiveBlocks(2).size());
+        assertEquals(6, fcGraph.getBlockCount());
+        assertEquals(Arrays.asList("B_0--B2_1"), fcGraph.getBlock("B_0--B1_1").getAliases());
+        assertTrue(fcGraph.getBlock("B1_1--B1_2").getAliases().isEmpty());
+    }
+
+    public void testQuotient() throws Exception {
+        // Two identical rings A -> B -> A, both reachable from and leading back to C
+        ProtocolGraph rings = new ProtocolGraph(new Args());
+        MessageBlock c = new MessageBlock("C", 10);
+        c.addMessage(new Message("C_0", c, 0, 3));
+        rings.addBlock(c);
+        for (String ring : Arrays.asList("1", "2")) {
+            MessageBlock a = new MessageBlock("A" + ring, 4);
+            a.addMessage(new Message("A" + ring + "_0", a, 0, 1));
+            a.addMessage(new Message("A" + ring + "_1", a, 2, 1));
+            MessageBlock b = new MessageBlock("B" + ring, 6);
+            b.addMessage(new Message("B" + ring + "_0", b, 1, 2));
+            a.addNext(b);
+            b.addNext(a);
+            b.addNext(c);
+            c.addNext(a);
+            rings.addBlock(a);
+            rings.addBlock(b);
+        }
+
+        ProtocolGraph quotient = rings.quotient();
+        assertEquals(3, quotient.getBlockCount());
+        assertEquals(Arrays.asList("A2"), quotient.getBlock("A1").getAliases());
+        assertEquals(Arrays.asList("B2"), quotient.getBlock("B1").getAliases());
+        assertEquals(1, quotient.getBlock("C").getNextBlocks().size());
+        assertEquals(2, quotient.getBlock("B1").getNextBlocks().size());
+
+        for (long time = 0; time < 100; time++) {
+            assertEquals(rings.maxTraffic(time), quotient.maxTraffic(time));
+            assertEquals(rings.maxPrefix(time), quotient.maxPrefix(time));
+            assertEquals(rings.maxSuffix(time), quotient.maxSuffix(time));
+        }
+
+        // Blocks that only share their timing but not their successors are kept apart
+        assertEquals(graph.getBlockCount(), graph.quotient().getBlockCount());
+    }
+
+    public void testDumpGraph() throws Exception {
         PseudoPeriodicFunction f = graph.approximateSubadditive(10_000_000_000L);
-        ArrivalCurve curve = f.concaveHull();
-        new MatplotlibOutputFormatter().printMaxTraffic(graph, 20_000_000_000L);
-        new MatplotlibOutputFormatter().printPseudoperiodicFunction(graph, f, 20_000_000_000L);
-        new MatplotlibOutputFormatter().printArrivalCurve(curve, 20_000_000_000L);
+        AnalysisResult result = new AnalysisResult(graph, f, 20_000_000_000L, true, 0);
+        assertEquals(graph.maxTraffic(20_000_000_000L), result.getMaxTraffic().getValue(20_000_000_000L));
+        assertEquals(f.incrementTimeSteps, graph.maxTrafficFunction(10_000_000_000L).getIncrementTimeSteps());
+        StringWriter out = new StringWriter();
+        new MatplotlibOutputFormatter().printMaxTraffic(result, out);
+        new MatplotlibOutputFormatter().printPseudoperiodicFunction(result, out);
+        new MatplotlibOutputFormatter().printArrivalCurve(result, out);
+        assertTrue(out.toString().startsWith("# Actual traffic up to 20000000000\nx = [0, 1, "));
+        assertTrue(out.toString().contains("legend_entry_ch, = plt.plot(x, y, label='Concave Hull')"));
     }
-}
\ No newline at end of file
+
+}
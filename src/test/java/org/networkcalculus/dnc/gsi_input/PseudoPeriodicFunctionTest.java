@@ -4,8 +4,11 @@ import org.networkcalculus.dnc.gsi_input.PseudoPeriodicFunction;
 import org.networkcalculus.dnc.numbers.Num;
 import org.networkcalculus.dnc.Calculator;
 import org.networkcalculus.dnc.curves.ArrivalCurve;
+import org.networkcalculus.dnc.curves.Curve;
 import org.networkcalculus.dnc.curves.LinearSegment;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 /**
@@ -96,4 +99,97 @@ public class PseudoPeriodicFunctionTest extends TestCase {
         assertEquals(num_factory.create(3), curve.getSegment(3).getY());
         assertEquals(num_factory.create(0.4), curve.getSegment(3).getGrad());
     }
-}
\ No newline at end of file
+
+    public void testHullSimplification() {
+        PseudoPeriodicFunction f = new PseudoPeriodicFunction(1000, 100, 10);
+        for (int t = 0; t <= 1100; t += 10) {
+            f.setValueAt(t, Math.floor(10 * Math.sqrt(t)));
+        }
+        ArrivalCurve hull = f.concaveHull();
+        assertTrue(hull.getSegmentCount() > 6);
+
+        HullSimplification unlimited = new HullSimplification(hull, 0);
+        assertSame(hull, unlimited.getCurve());
+        assertEquals(0., unlimited.getAddedArea());
+
+        HullSimplification simplification = new HullSimplification(hull, 6);
+        ArrivalCurve curve = simplification.getCurve();
+        assertEquals(6, curve.getSegmentCount());
+        assertTrue(simplification.getAddedArea() > 0);
+        assertEquals(hull.getSegment(hull.getSegmentCount() - 1).getGrad(), curve.getSegment(5).getGrad());
+        assertConcaveAndContinuous(curve);
+
+        double maxDifference = 0;
+        for (int t = 0; t <= 2000; t++) {
+            double difference = valueAt(curve, t) - valueAt(hull, t);
+            assertTrue("Simplified hull below original at " + t, difference >= -1e-9);
+            maxDifference = Math.max(maxDifference, difference);
+        }
+        assertEquals(simplification.getMaxOverestimation(), maxDifference, 1e-6);
+
+        assertEquals(2, new HullSimplification(hull, 2).getCurve().getSegmentCount());
+    }
+
+    public void testHullSimplificationExtendsFirstSegment() {
+        Num num_factory = Num.getFactory(Calculator.getInstance().getNumBackend());
+        Curve curve_factory = Calculator.getInstance().getCurveFactory();
+        ArrivalCurve hull = curve_factory.createArrivalCurve(3);
+        hull.setSegment(0, LinearSegment.createLinearSegment(num_factory.create(0), num_factory.create(0), num_factory.create(3), false));
+        hull.setSegment(1, LinearSegment.createLinearSegment(num_factory.create(10), num_factory.create(30), num_factory.create(2), false));
+        hull.setSegment(2, LinearSegment.createLinearSegment(num_factory.create(20), num_factory.create(50), num_factory.create(1), false));
+
+        ArrivalCurve curve = new HullSimplification(hull, 2).getCurve();
+        assertEquals(2, curve.getSegmentCount());
+        assertConcaveAndContinuous(curve);
+        assertEquals(15., curve.getSegment(1).getX().doubleValue(), 1e-9);
+        assertEquals(45., curve.getSegment(1).getY().doubleValue(), 1e-9);
+    }
+
+    private static void assertConcaveAndContinuous(ArrivalCurve curve) {
+        for (int i = 1; i < curve.getSegmentCount(); i++) {
+            LinearSegment before = curve.getSegment(i - 1);
+            LinearSegment segment = curve.getSegment(i);
+            if (segment.getX().equals(before.getX())) {
+                continue; // The point at the origin before the burst
+            }
+            assertTrue("Not concave at segment " + i, segment.getGrad().leq(before.getGrad()));
+            double x = segment.getX().doubleValue();
+            assertEquals("Not continuous at " + x, valueAt(curve, x), before.getY().doubleValue()
+                    + before.getGrad().doubleValue() * (x - before.getX().doubleValue()), 1e-9);
+        }
+    }
+
+    private static double valueAt(ArrivalCurve curve, double x) {
+        LinearSegment segment = curve.getSegment(0);
+        for (int i = 1; i < curve.getSegmentCount() && curve.getSegment(i).getX().doubleValue() <= x; i++) {
+            segment = curve.getSegment(i);
+        }
+        return segment.getY().doubleValue() + segment.getGrad().doubleValue() * (x - segment.getX().doubleValue());
+    }
+
+    public void testScaleTimeOfUnitPeriod() {
+        ProtocolGraph coarse = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 4000);
+        a.addMessage(new Message("A_0", a, 0, 1));
+        a.addMessage(new Message("A_1", a, 3000, 2));
+        MessageBlock b = new MessageBlock("B", 6000);
+        b.addMessage(new Message("B_0", b, 1000, 3));
+        a.addNext(a);
+        a.addNext(b);
+        b.addNext(a);
+        coarse.addBlock(a);
+        coarse.addBlock(b);
+        ProtocolGraph reduced = coarse.reduceTimeBase(1000);
+
+        // The LOOP and CYCLE heuristics end their initial part at the start of a period of length 1
+        PseudoPeriodicFunction loop = reduced.fullyConnected(1).approximateMostEfficientLoop();
+        PseudoPeriodicFunction cycle = reduced.approximateCycleRatio(12);
+        for (PseudoPeriodicFunction f : Arrays.asList(loop, cycle)) {
+            assertEquals(1, f.periodLength);
+            PseudoPeriodicFunction g = f.scaleTime(1000);
+            for (long time = 0; time <= (f.periodBegin + 2 * f.periodLength) * 1000; time++) {
+                assertEquals(f.getValue((time + 999) / 1000), g.getValue(time));
+            }
+        }
+    }
+}
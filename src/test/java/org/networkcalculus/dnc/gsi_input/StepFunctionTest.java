@@ -2,6 +2,12 @@ package org.networkcalculus.dnc.gsi_input;
 
 import org.networkcalculus.dnc.gsi_input.StepFunction;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 /**
@@ -10,6 +16,7 @@ import junit.framework.TestCase;
 public class StepFunctionTest extends TestCase {
 
     StepFunction func;
+    File swapDirectory;
 
     @Override
     public void setUp() throws Exception {
@@ -27,6 +34,19 @@ public class StepFunctionTest extends TestCase {
         func.setValueAt(1000000000, 7);
     }
 
+    @Override
+    public void tearDown() throws Exception {
+        MappedStepStorage.setSwapDirectory(null);
+        StepFunction.setDenseIndexEnabled(false);
+        if (swapDirectory != null) {
+            for (File file : swapDirectory.listFiles()) {
+                file.delete();
+            }
+            swapDirectory.delete();
+        }
+        super.tearDown();
+    }
+
     public void testAddValue() {
         StepFunction func = new StepFunction();
         assertEquals(0, func.getValidUpTo());
@@ -41,6 +61,69 @@ public class StepFunctionTest extends TestCase {
     }
 
 
+    public void testMappedStorage() throws Exception {
+        swapDirectory = Files.createTempDirectory("stepfunctions").toFile();
+        MappedStepStorage.setSwapDirectory(swapDirectory);
+        StepFunction func = new StepFunction();
+        int steps = 3 * MappedStepStorage.PAGE_ENTRIES + 7;
+        for (int i = 0; i < steps; i++) {
+            func.setValueAt(2L * i, i);
+        }
+
+        assertEquals(1, swapDirectory.listFiles().length);
+        assertEquals(steps, func.getIncrementTimeSteps().size());
+        assertEquals(steps - 1., func.maximumValue());
+        assertEquals(5000., func.getValue(10001));
+        assertEquals(10002L, func.firstTimeExceeding(5000.5));
+        assertEquals(10002L, func.nextIncrementTimeAfter(10000));
+        assertEquals(Long.valueOf(2L * (steps - 1)), func.getIncrementTimeSteps().get(steps - 1));
+    }
+
+    public void testMappedStorageReusesPages() throws Exception {
+        swapDirectory = Files.createTempDirectory("stepfunctions").toFile();
+        MappedStepStorage.setSwapDirectory(swapDirectory);
+        // Thousands of blocks with small functions, rebuilt on every message, stay on the heap
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            MessageBlock block = new MessageBlock("B" + i, 1000);
+            for (int j = 0; j < 50; j++) {
+                block.addMessage(new Message("M" + j, block, 20 * j, 1 + j % 3));
+            }
+            blocks.add(block);
+        }
+        assertEquals(0, MappedStepStorage.allocatedPages());
+        assertEquals(0, swapDirectory.listFiles().length);
+        assertEquals(99., blocks.get(4999).maxPrefix(1000));
+
+        // A function leaves the heap as soon as it has more breakpoints than fit there
+        StepStorage spilled = StepStorage.create();
+        for (int i = 0; i <= MappedStepStorage.HEAP_ENTRIES; i++) {
+            spilled.add(i, i);
+        }
+        assertEquals(1, MappedStepStorage.allocatedPages());
+        assertEquals((double) MappedStepStorage.HEAP_ENTRIES, spilled.getValue(MappedStepStorage.HEAP_ENTRIES));
+        spilled.truncate(0);
+
+        StepStorage first = StepStorage.create();
+        for (int i = 0; i < 3 * MappedStepStorage.PAGE_ENTRIES; i++) {
+            first.add(i, i);
+        }
+        assertEquals(3, MappedStepStorage.allocatedPages());
+        assertEquals(1, swapDirectory.listFiles().length);
+
+        // The pages of a truncated storage are handed out again
+        first.truncate(MappedStepStorage.PAGE_ENTRIES);
+        StepStorage second = StepStorage.create();
+        for (int i = 0; i < 2 * MappedStepStorage.PAGE_ENTRIES; i++) {
+            second.add(i, -i);
+        }
+        assertEquals(3, MappedStepStorage.allocatedPages());
+        assertEquals(MappedStepStorage.PAGE_ENTRIES, first.size());
+        assertEquals(MappedStepStorage.PAGE_ENTRIES - 1., first.getValue(MappedStepStorage.PAGE_ENTRIES - 1));
+        assertEquals(-2. * MappedStepStorage.PAGE_ENTRIES + 1, second.getValue(2 * MappedStepStorage.PAGE_ENTRIES - 1));
+    }
+
+
     public void testGetValue() throws Exception {
         assertEquals("Time before function returns 0", 0., func.getValue(-1));
         assertEquals("Exact match returns exact value", 0., func.getValue(0));
@@ -64,6 +147,114 @@ public class StepFunctionTest extends TestCase {
         assertEquals(4., func.maximumInterval(8, 32));
     }
 
+    public void testMaxIntervalMatchesScan() {
+        Random random = new Random(42);
+        StepFunction f = new StepFunction();
+        long[] times = new long[500];
+        double[] values = new double[500];
+        long time = 0;
+        double value = 0;
+        for (int i = 0; i < times.length; i++) {
+            time += 1 + random.nextInt(20);
+            value += 1 + random.nextInt(10);
+            times[i] = time;
+            values[i] = value;
+            f.setValueAt(time, value);
+        }
+
+        // Alternate between short and long intervals
+        for (int length = 0; length < 2000; length += 7) {
+            long interval = length % 2 == 0 ? length : 2000 - length;
+            long latestOffset = times[times.length / 2];
+            double expected = 0;
+            for (int i = 0; i < times.length && times[i] <= latestOffset; i++) {
+                expected = Math.max(expected, f.getValue(times[i] + interval - 1) - (i == 0 ? 0 : values[i - 1]));
+            }
+            assertEquals(expected, f.maximumInterval(interval, latestOffset));
+        }
+
+        try {
+            f.maximumInterval(time, time);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // pass
+        }
+    }
+
+    public void testMaxIntervalOnUniformTraffic() {
+        StepFunction f = new StepFunction();
+        for (long time = 0; time <= 200_000; time++) {
+            f.setValueAt(time, time / 2);
+        }
+
+        int starts = f.indexAfter(100_000);
+        for (long interval = 1; interval < 2000; interval += 20) {
+            double expected = 0;
+            for (int idx = 0; idx < starts; idx++) {
+                expected = Math.max(expected, f.getValue(f.getTimeAt(idx) + interval - 1) - (idx == 0 ? 0 : f.getValueAt(idx - 1)));
+            }
+            assertEquals(expected, f.maximumInterval(interval, 100_000));
+        }
+    }
+
+    public void testDenseIndex() {
+        // Clustered steps, so the buckets hold very different numbers of steps
+        Random random = new Random(7);
+        StepFunction f = new StepFunction();
+        StepFunction reference = new StepFunction();
+        long time = 0;
+        for (int i = 0; i < 1000; i++) {
+            time += i % 100 < 90 ? 1 + random.nextInt(3) : 1 + random.nextInt(100_000);
+            f.setValueAt(time, i + 1);
+            reference.setValueAt(time, i + 1);
+        }
+
+        StepFunction.setDenseIndexEnabled(true);
+        assertSameLookups(reference, f, time);
+
+        // Steps added after the index was built
+        for (int i = 0; i < 300; i++) {
+            time += 1 + random.nextInt(1000);
+            f.setValueAt(time, 1001 + i);
+            reference.setValueAt(time, 1001 + i);
+            assertEquals(reference.getValue(time - 1), f.getValue(time - 1));
+        }
+        assertSameLookups(reference, f, time);
+
+        // Truncating the steps drops the index
+        f.setPeriodic(time / 2, time / 2, f.getValue(time) - f.getValue(time / 2));
+        reference.setPeriodic(time / 2, time / 2, reference.getValue(time) - reference.getValue(time / 2));
+        assertSameLookups(reference, f, 3 * time);
+
+        f.clear();
+        for (int i = 0; i < 100; i++) {
+            f.setValueAt(10 * i, i);
+        }
+        assertEquals(5., f.getValue(55));
+        assertEquals(6, f.indexAfter(55));
+    }
+
+    private static void assertSameLookups(StepFunction reference, StepFunction f, long until) {
+        boolean dense = StepFunction.isDenseIndexEnabled();
+        for (long time = -5; time <= until + 5; time += 1 + time / 1000) {
+            StepFunction.setDenseIndexEnabled(false);
+            double value = reference.getValue(time);
+            int idx = reference.indexAfter(time);
+            StepFunction.setDenseIndexEnabled(dense);
+            assertEquals("Value at " + time, value, f.getValue(time));
+            assertEquals("Index after " + time, idx, f.indexAfter(time));
+        }
+    }
+
+    public void testIndexAfter() {
+        assertEquals(0, func.indexAfter(-1));
+        assertEquals(1, func.indexAfter(0));
+        assertEquals(4, func.indexAfter(5));
+        assertEquals(func.getNumSteps(), func.indexAfter(64));
+        assertEquals(16L, func.getTimeAt(func.indexAfter(8)));
+        assertEquals(5., func.getValueAt(func.indexAfter(8)));
+    }
+
     public void testMaxValue() {
         assertEquals(7., func.maximumValue());
     }
@@ -102,4 +293,81 @@ public class StepFunctionTest extends TestCase {
             // pass
         }
     }
-}
\ No newline at end of file
+
+    public void testPeriodic() {
+        StepFunction reference = new StepFunction();
+        StepFunction periodic = new StepFunction();
+        for (long t = 0; t <= 1000; t++) {
+            double value = t < 2 ? t : 2 + 2 * ((t - 2) / 4) + ((t - 2) % 4 >= 1 ? 1 : 0);
+            reference.setValueAt(t, value);
+            if (t <= 20) {
+                periodic.setValueAt(t, value);
+            }
+        }
+
+        periodic.setPeriodic(2, 4, 2);
+        assertTrue(periodic.isPeriodic());
+        assertEquals(6, periodic.getStoredUpTo());
+        assertEquals(Long.MAX_VALUE, periodic.getValidUpTo());
+        assertEquals(reference.indexAfter(6), periodic.getNumSteps());
+        for (long t = 0; t <= 1000; t++) {
+            assertEquals(reference.getValue(t), periodic.getValue(t));
+        }
+        for (double value = -1; value < 400; value += 0.5) {
+            assertEquals(reference.firstTimeExceeding(value), periodic.firstTimeExceeding(value));
+        }
+        assertEquals(reference.maximumInterval(200, 10), periodic.maximumInterval(200, 10));
+        assertEquals(2 + 2 * 250_000_000., periodic.getValue(1_000_000_002));
+        assertTrue(periodic.repeatsFrom(10, 8, 4));
+        assertFalse(periodic.repeatsFrom(10, 6, 3));
+
+        // The steps of later periods are counted and indexed, but not stored
+        for (long t = -1; t <= 1000; t++) {
+            assertEquals(reference.indexAfter(t), periodic.indexAfter(t));
+        }
+        for (int i = 0; i < reference.getNumSteps(); i++) {
+            assertEquals(reference.getTimeAt(i), periodic.getTimeAt(i));
+            assertEquals(reference.getValueAt(i), periodic.getValueAt(i));
+        }
+        assertEquals(6, periodic.getStoredUpTo());
+
+        try {
+            periodic.setValueAt(2000, 2000);
+            fail();
+        } catch (IllegalStateException ex) {
+            // pass
+        }
+        try {
+            reference.setPeriodic(2, 4, 3);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // pass
+        }
+    }
+
+    public void testCursor() {
+        StepFunction.Cursor cursor = func.cursor();
+        for (long time = -1; time <= 100; time++) {
+            assertEquals(func.getValue(time), cursor.getValue(time));
+        }
+        assertEquals(func.getValue(5), cursor.getValue(5));
+        assertEquals(func.getValue(999_999_999), cursor.getValue(999_999_999));
+
+        cursor = func.cursor();
+        for (double value = -1; value < 7; value += 0.5) {
+            assertEquals(func.firstTimeExceeding(value), cursor.firstTimeExceeding(value));
+        }
+        assertEquals(func.firstTimeExceeding(1), cursor.firstTimeExceeding(1));
+
+        // Steps added after the cursor was created are found as well
+        func.setValueAt(1_000_000_010, 9);
+        assertEquals(9., cursor.getValue(1_000_000_010));
+        assertEquals(1_000_000_010, cursor.firstTimeExceeding(8));
+        try {
+            cursor.firstTimeExceeding(9);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // pass
+        }
+    }
+}
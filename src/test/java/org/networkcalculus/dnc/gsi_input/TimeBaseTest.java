@@ -0,0 +1,119 @@
+package org.networkcalculus.dnc.gsi_input;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests of reducing and quantizing the time base of a protocol graph
+ */
+public class TimeBaseTest extends TestCase {
+
+    private ProtocolGraph graph;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        graph = new DotGraphParser(DotGraphParser.class.getResourceAsStream("/cryring_fictional.dot")).parse();
+    }
+
+    public void testReduceTimeBase() {
+        ProtocolGraph coarse = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 4000);
+        a.addMessage(new Message("A_0", a, 0, 1));
+        a.addMessage(new Message("A_1", a, 3000, 2));
+        MessageBlock b = new MessageBlock("B", 6000);
+        b.addMessage(new Message("B_0", b, 1000, 3));
+        a.addNext(a);
+        a.addNext(b);
+        b.addNext(a);
+        coarse.addBlock(a);
+        coarse.addBlock(b);
+
+        assertEquals(1000, coarse.timeBase());
+        assertEquals(1, graph.timeBase());
+        ProtocolGraph reduced = coarse.reduceTimeBase(1000);
+        assertEquals(6, reduced.getBlock("B").getPeriod());
+        for (long time = 0; time < 30000; time += 250) {
+            assertEquals(coarse.maxTraffic(time), reduced.maxTraffic((time + 999) / 1000));
+        }
+
+        PseudoPeriodicFunction f = coarse.approximateSubadditive(20000);
+        PseudoPeriodicFunction g = reduced.approximateSubadditive(20).scaleTime(1000);
+        assertEquals(f.incrementTimeSteps, g.incrementTimeSteps);
+        assertEquals(f.incrementValues, g.incrementValues);
+        assertEquals(f.periodLength, g.periodLength);
+        assertEquals(f.getValue(61234), g.getValue(61234));
+
+        try {
+            coarse.reduceTimeBase(3000);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // pass
+        }
+    }
+
+    public void testRescaleWithReducedTimeBase() {
+        ProtocolGraph coarse = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 4000);
+        a.addMessage(new Message("A_0", a, 0, 1));
+        a.addMessage(new Message("A_1", a, 3000, 2));
+        MessageBlock b = new MessageBlock("B", 6000);
+        b.addMessage(new Message("B_0", b, 1000, 3));
+        a.addNext(a);
+        a.addNext(b);
+        b.addNext(a);
+        coarse.addBlock(a);
+        coarse.addBlock(b);
+        ProtocolGraph reduced = coarse.reduceTimeBase(1000);
+
+        Args args = new Args();
+        args.heuristic = Args.Heuristic.RESCALE;
+        args.numBlocks = 2;
+        args.threshold = 40000;
+
+        // B_0 is rescaled to 667 in the original time, but to 1 (1000) in the reduced one
+        PseudoPeriodicFunction exact = coarse.fullyConnected(2).rescale().approximateTightestLoop();
+        PseudoPeriodicFunction inReducedTime = reduced.fullyConnected(2).rescale().approximateTightestLoop().scaleTime(1000);
+        assertFalse(exact.incrementTimeSteps.equals(inReducedTime.incrementTimeSteps));
+
+        PseudoPeriodicFunction f = Main.approximateRescale(args, coarse);
+        assertEquals(exact.incrementTimeSteps, f.incrementTimeSteps);
+        assertEquals(exact.incrementValues, f.incrementValues);
+
+        PseudoPeriodicFunction g = Main.approximateByComponent(args, coarse, reduced, 1000);
+        PseudoPeriodicFunction h = Main.approximateByComponent(args, coarse, coarse, 1);
+        assertEquals(h.incrementTimeSteps, g.incrementTimeSteps);
+        assertEquals(h.incrementValues, g.incrementValues);
+        assertEquals(h.periodLength, g.periodLength);
+    }
+
+    public void testQuantize() {
+        ProtocolGraph fine = new ProtocolGraph(new Args());
+        MessageBlock a = new MessageBlock("A", 7);
+        a.addMessage(new Message("A_0", a, 1, 1));
+        a.addMessage(new Message("A_1", a, 6, 2));
+        MessageBlock b = new MessageBlock("B", 5);
+        b.addMessage(new Message("B_0", b, 0, 1));
+        b.addMessage(new Message("B_1", b, 4, 3));
+        a.addNext(b);
+        b.addNext(a);
+        b.addNext(b);
+        fine.addBlock(a);
+        fine.addBlock(b);
+
+        for (long grid = 2; grid <= 5; grid++) {
+            ProtocolGraph coarse = fine.quantize(grid);
+            assertEquals(7 / grid, coarse.getBlock("A").getPeriod());
+            PseudoPeriodicFunction f = coarse.approximateSubadditive(40 / grid).scaleTimeConservatively(grid);
+            for (long time = 0; time < 200; time++) {
+                assertTrue("Grid " + grid + ", time " + time, f.getValue(time) >= fine.maxTraffic(time));
+            }
+        }
+
+        try {
+            fine.quantize(6);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // pass
+        }
+    }
+}